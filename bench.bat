@@ -0,0 +1 @@
+java -cp "out;lib/antlr.jar" Benchmark %*
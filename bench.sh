@@ -0,0 +1,2 @@
+#!/usr/bin/env bash
+java -cp "out:lib/antlr.jar" Benchmark $@
@@ -0,0 +1,103 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+ * Lowers a program to A-normal form: every operand of an EBinOp, ENot,
+ * EFnCall, EConcat, EPrint or ECast becomes an atom (a variable or a literal),
+ * with anything more complex first bound to a fresh temporary by an ELet.
+ * Evaluation order is unchanged. Let binders are also renamed apart, so that
+ * hoisting a subexpression's lets outwards can never capture a variable used
+ * by one of its siblings. Fresh names contain a '%', which the parser never
+ * accepts in an identifier.
+ *
+ * The result is an ordinary Program, which still needs to be resolved.
+ */
+public class AnfLowering {
+
+    private int fresh = 0;
+
+    public Program lowerProgram(Program prog) {
+        List<FnDef> defs = new ArrayList<>();
+        for (FnDef def : prog.getFunctionDefs()) {
+            Environment<String> names = new Environment<>();
+            for (AnnotatedParam param : def.getParams()) {
+                names = names.extend(param.symbol, param.param);
+            }
+            defs.add(new FnDef(def.getFnName(), def.getParams(), def.getReturnType(),
+                    lowerExpr(names, def.getBody())));
+        }
+        return new Program(defs, lowerExpr(new Environment<>(), prog.getMainExpr()));
+    }
+
+    public Expr lowerExpr(Environment<String> names, Expr e) {
+        return normalize(names, e, Function.identity());
+    }
+
+    private String freshName(String base) {
+        return base + "%" + (fresh++);
+    }
+
+    private static boolean isAtom(Expr e) {
+        return e instanceof EVar || e instanceof EInt || e instanceof EBool || e instanceof EString
+                || e instanceof EUnit;
+    }
+
+    // Normalizes e and passes the result (which may be a complex expression) to k
+    private Expr normalize(Environment<String> names, Expr e, Function<Expr, Expr> k) {
+        return switch (e) {
+            case EInt ignored -> k.apply(e);
+            case EBool ignored -> k.apply(e);
+            case EString ignored -> k.apply(e);
+            case EUnit ignored -> k.apply(e);
+            case EGetInput ignored -> k.apply(e);
+            case EVar ev -> k.apply(new EVar(names.lookup(ev.getSymbol())));
+            case EBinOp binOp -> normalizeAtom(names, binOp.getE1(), left ->
+                    normalizeAtom(names, binOp.getE2(), right ->
+                            k.apply(new EBinOp(left, binOp.getOp(), right))));
+            case ENot en -> normalizeAtom(names, en.getExpr(), a -> k.apply(new ENot(a)));
+            case EPrint ep -> normalizeAtom(names, ep.getExpr(), a -> k.apply(new EPrint(a)));
+            case ECast ec -> normalizeAtom(names, ec.getExpr(), a -> k.apply(new ECast(a, ec.getType())));
+            case EFnCall efc -> normalizeAtoms(names, efc.getArgs(), 0, new ArrayList<>(),
+                    args -> k.apply(new EFnCall(efc.getFnName(), args)));
+            case EConcat ec -> normalizeAtoms(names, ec.getExprs(), 0, new ArrayList<>(),
+                    parts -> k.apply(new EConcat(parts)));
+            case ELet el -> normalize(names, el.getSubject(), subject -> {
+                String binder = freshName(el.getBinder());
+                Environment<String> inner = names.extend(el.getBinderSymbol(), binder);
+                return new ELet(binder, subject, normalize(inner, el.getContinuation(), k));
+            });
+            // The branches are normalized on their own, so k is applied (and any code it
+            // builds is emitted) once, after the conditional rather than in each branch
+            case ECond ec -> normalizeAtom(names, ec.getTest(), test ->
+                    k.apply(new ECond(test, lowerExpr(names, ec.getThenBranch()),
+                            lowerExpr(names, ec.getElseBranch()))));
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        };
+    }
+
+    // Normalizes e and passes an atom holding its value to k, binding it to a temporary if needed
+    private Expr normalizeAtom(Environment<String> names, Expr e, Function<Expr, Expr> k) {
+        return normalize(names, e, n -> {
+            if (isAtom(n)) {
+                return k.apply(n);
+            }
+            String temp = freshName("");
+            return new ELet(temp, n, k.apply(new EVar(temp)));
+        });
+    }
+
+    private Expr normalizeAtoms(Environment<String> names, List<Expr> exprs, int from,
+                                List<Expr> atoms, Function<List<Expr>, Expr> k) {
+        if (from == exprs.size()) {
+            return k.apply(atoms);
+        }
+        return normalizeAtom(names, exprs.get(from), a -> {
+            List<Expr> more = new ArrayList<>(atoms);
+            more.add(a);
+            return normalizeAtoms(names, exprs, from + 1, more, k);
+        });
+    }
+}
@@ -0,0 +1,48 @@
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.*;
+import ast.*;
+import antlr.*;
+
+/*
+ * The ANTLR front end: DigglebyLexer and DigglebyParser build a parse tree,
+ * which DigglebyASTGeneratorVisitor turns into the AST. It is kept apart from
+ * Main so the ANTLR runtime is only loaded when this front end is used.
+ */
+public class AntlrFrontEnd {
+
+    private AntlrFrontEnd() {
+    }
+
+    public static Program parse(String code) {
+        CharStream input = CharStreams.fromString(code);
+        DigglebyLexer lexer = new DigglebyLexer(input);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        DigglebyParser parser = new DigglebyParser(tokens);
+        ParseTree tree = parse(parser, tokens);
+        //System.out.println(tree.toStringTree(parser));
+        return new DigglebyASTGeneratorVisitor().visitProgram(tree);
+    }
+
+    // Parses in two stages. SLL prediction is much cheaper than full LL and
+    // gives the same tree for every valid program this grammar sees in
+    // practice, but it can reject valid input, so its first error makes it
+    // bail out silently. The program is then parsed again from the start with
+    // full LL and the usual error reporting and recovery.
+    private static ParseTree parse(DigglebyParser parser, CommonTokenStream tokens) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.prog();
+        } catch (ParseCancellationException ex) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.prog();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import ast.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ * Writes out the exact shape of a parsed program as nested s-expressions, so
+ * two front ends can be checked for building the same tree. Unlike the AST's
+ * toString, which prints source syntax without parentheses, this shows how
+ * operators were grouped.
+ */
+public class AstDump {
+
+    private AstDump() {
+    }
+
+    public static String of(Program prog) {
+        StringBuilder sb = new StringBuilder();
+        for (FnDef fn : prog.getFunctionDefs()) {
+            String params = fn.getParams().stream()
+                    .map(p -> p.param + ": " + p.type)
+                    .collect(Collectors.joining(", "));
+            sb.append("(def ").append(fn.getFnName()).append(" (").append(params).append(") ")
+                    .append(fn.getReturnType()).append(' ').append(of(fn.getBody())).append(")\n");
+        }
+        return sb.append(of(prog.getMainExpr())).toString();
+    }
+
+    public static String of(Expr e) {
+        return switch (e) {
+            case EInt ei -> Integer.toString(ei.getValue());
+            case EBool eb -> Boolean.toString(eb.getValue());
+            case EString es -> "\"" + es.getValue() + "\"";
+            case EUnit ignored -> "()";
+            case EVar ev -> ev.getVar();
+            case EBinOp binOp -> "(" + binOp.getOp() + " " + of(binOp.getE1()) + " " + of(binOp.getE2()) + ")";
+            case ENot en -> "(not " + of(en.getExpr()) + ")";
+            case ELet el -> "(let " + el.getBinder() + " " + of(el.getSubject()) + " " + of(el.getContinuation()) + ")";
+            case ECond ec -> "(if " + of(ec.getTest()) + " " + of(ec.getThenBranch()) + " " + of(ec.getElseBranch()) + ")";
+            case EFnCall efc -> "(call " + efc.getFnName() + all(efc.getArgs()) + ")";
+            case EConcat ec -> "(concat" + all(ec.getExprs()) + ")";
+            case EPrint ep -> "(print " + of(ep.getExpr()) + ")";
+            case EGetInput ignored -> "(getInput)";
+            case ECast ec -> "(cast " + of(ec.getExpr()) + " " + ec.getType() + ")";
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        };
+    }
+
+    private static String all(List<Expr> exprs) {
+        return exprs.stream().map(arg -> " " + of(arg)).collect(Collectors.joining());
+    }
+}
@@ -0,0 +1,111 @@
+import ast.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/*
+ * A small harness for measuring the execution engines. It runs a program a
+ * number of times and reports the average wall-clock time and heap allocation,
+ * per run and (for the tree interpreter, which counts calls) per function
+ * call. Allocation is read from HotSpot's per-thread allocation counter, so
+ * the numbers only cover the interpreting thread. Given a comma-separated
+ * list of engines, e.g. -engine=tree,regvm, it measures each in turn and
+ * reports the speedup of the others over the first. -O<n> optimizes the
+ * program first, as in Main.
+ */
+public class Benchmark {
+
+    private static void usage() {
+        System.out.println("Usage: ./bench.(sh|bat) [-warmup=<n>] [-iterations=<n>] [-O0..-O"
+                + Main.MAX_OPT_LEVEL + "] [-engine=" + String.join("|", Main.ENGINES) + "[,...]] <filename>");
+    }
+
+    // Runs the program once on the given engine, returning the number of function
+    // calls made if the engine counts them and 0 otherwise
+    private static long runOnce(String engine, Program p) {
+        try {
+            if (engine.equals("tree")) {
+                Interp interp = new Interp();
+                interp.interpProgram(p);
+                return interp.getCallCount();
+            }
+            Main.run(engine, p);
+            return 0;
+        } finally {
+            // Writing out the program's output is part of the run
+            Builtins.flushOutput();
+        }
+    }
+
+    // Measures one engine, prints its figures and returns its average time per run in nanoseconds
+    private static double measure(String engine, Program p, int warmup, int iterations) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (int i = 0; i < warmup; i++) {
+            runOnce(engine, p);
+        }
+
+        long totalNanos = 0;
+        long totalBytes = 0;
+        long totalCalls = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long calls = runOnce(engine, p);
+            totalNanos += System.nanoTime() - start;
+            totalBytes += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+            totalCalls += calls;
+        }
+
+        System.out.printf("Engine: %s%n", engine);
+        System.out.printf("Runs: %d (after %d warmup)%n", iterations, warmup);
+        System.out.printf("Time per run: %.3f ms%n", totalNanos / 1e6 / iterations);
+        System.out.printf("Allocated per run: %d bytes%n", totalBytes / iterations);
+        if (totalCalls > 0) {
+            System.out.printf("Calls per run: %d%n", totalCalls / iterations);
+            System.out.printf("Allocated per call: %.1f bytes%n", (double) totalBytes / totalCalls);
+        }
+        return (double) totalNanos / iterations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = 5;
+        int iterations = 10;
+        List<String> engines = List.of("tree");
+        int optLevel = 0;
+        String inputFile = null;
+        for (String arg : args) {
+            if (arg.startsWith("-warmup=")) {
+                warmup = Integer.parseInt(arg.substring("-warmup=".length()));
+            } else if (arg.startsWith("-iterations=")) {
+                iterations = Integer.parseInt(arg.substring("-iterations=".length()));
+            } else if (arg.startsWith("-engine=")) {
+                engines = List.of(arg.substring("-engine=".length()).split(","));
+            } else if (Main.isOptLevel(arg)) {
+                optLevel = arg.charAt(2) - '0';
+            } else if (inputFile == null && !arg.startsWith("-")) {
+                inputFile = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (inputFile == null || iterations <= 0 || !Main.ENGINES.containsAll(engines)) {
+            usage();
+            return;
+        }
+
+        Program p = Main.loadAndParse(inputFile);
+        p = Main.optimize((new Typecheck()).typecheckProgram(p), optLevel);
+        (new Resolver()).resolveProgram(p);
+
+        // With several engines, each one after the first is compared against the first
+        double baseline = measure(engines.get(0), p, warmup, iterations);
+        for (String engine : engines.subList(1, engines.size())) {
+            System.out.println();
+            double nanos = measure(engine, p, warmup, iterations);
+            System.out.printf("Speedup over %s: %.2fx%n", engines.get(0), baseline / nanos);
+        }
+    }
+}
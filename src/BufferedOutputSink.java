@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * An OutputSink that collects printed lines and writes them to a stream as
+ * UTF-8 in one go, once limit characters have built up or when flushed, so a
+ * program that prints in a loop makes a write per buffer rather than per line.
+ */
+public class BufferedOutputSink implements OutputSink {
+
+    static final int DEFAULT_LIMIT = 1 << 16;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputStream out;
+    private final int limit;
+    private final StringBuilder buffer;
+
+    public BufferedOutputSink(OutputStream out, int limit) {
+        this.out = out;
+        this.limit = limit;
+        this.buffer = new StringBuilder(Math.min(limit, DEFAULT_LIMIT) + 128);
+    }
+
+    @Override
+    public void println(String line) {
+        buffer.append(line).append(LINE_SEPARATOR);
+        if (buffer.length() >= limit) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (buffer.length() > 0) {
+                out.write(buffer.toString().getBytes(StandardCharsets.UTF_8));
+                buffer.setLength(0);
+            }
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
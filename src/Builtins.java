@@ -0,0 +1,141 @@
+import ast.*;
+
+/*
+ * Runtime support shared by every execution engine: unwrapping values with a
+ * runtime type check, the cast rules from the spec, and the program's console
+ * input and output. Keeping these in one place means every engine reads from
+ * the same stdin buffer, writes to the same OutputSink and reports errors the
+ * same way.
+ */
+public class Builtins {
+
+    private static final LineReader reader = LineReader.forStdin();
+
+    private static OutputSink output = new BufferedOutputSink(System.out, BufferedOutputSink.DEFAULT_LIMIT);
+
+    private Builtins() {
+    }
+
+    public static boolean unwrapBool(Value v) {
+        if (v instanceof VBool) {
+            return ((VBool) v).getValue();
+        } else {
+            throw new RuntimeException("Runtime type error: Expected a bool but got value " + v);
+        }
+    }
+
+    public static int unwrapInt(Value v) {
+        if (v instanceof VInt) {
+            return ((VInt) v).getValue();
+        } else {
+            throw new RuntimeException("Runtime type error: Expected an int but got value " + v);
+        }
+    }
+
+    public static String unwrapString(Value v) {
+        if (v instanceof VString) {
+            return ((VString) v).getValue();
+        } else {
+            throw new RuntimeException("Runtime type error: Expected a string but got value " + v);
+        }
+    }
+
+    // Appends a concat operand to the string built so far, without flattening either
+    public static VString concat(VString prefix, Value part) {
+        if (part instanceof VString vs) {
+            return VString.concat(prefix, vs);
+        } else {
+            throw new RuntimeException("Runtime type error: Expected a string but got value " + part);
+        }
+    }
+
+    // Applies a binary operator to two already-evaluated operands
+    public static Value evalBinOp(EBinOp.Op op, Value left, Value right) {
+        return switch (op) {
+            case ADD -> VInt.of(unwrapInt(left) + unwrapInt(right));
+            case SUB -> VInt.of(unwrapInt(left) - unwrapInt(right));
+            case MUL -> VInt.of(unwrapInt(left) * unwrapInt(right));
+            case DIV -> {
+                int r = unwrapInt(right);
+                if (r == 0) throw new RuntimeException("Division by zero");
+                yield VInt.of(unwrapInt(left) / r);
+            }
+            case MOD -> {
+                int r = unwrapInt(right);
+                if (r == 0) throw new RuntimeException("Modulo by zero");
+                yield VInt.of(unwrapInt(left) % r);
+            }
+            case GT  -> VBool.of(unwrapInt(left) > unwrapInt(right));
+            case LT  -> VBool.of(unwrapInt(left) < unwrapInt(right));
+            case EQ  -> VBool.of(left == right || left.equals(right)); // Works for all types
+            case AND -> VBool.of(unwrapBool(left) && unwrapBool(right));
+            case OR  -> VBool.of(unwrapBool(left) || unwrapBool(right));
+        };
+    }
+
+    // Given a value and a type, performs a cast (according to the rules in the spec) if possible,
+    // raising a CastException otherwise.
+    public static Value cast(Value vFrom, Type ty) throws CastException {
+        return switch (ty) {
+            case TyString ignored -> switch (vFrom) {
+                case VInt vi -> new VString(Integer.toString(vi.getValue()));
+                case VBool vb -> new VString(vb.getValue() ? "true" : "false");
+                case VString vs -> vs;
+                case VUnit ignoredToo -> new VString("()");
+                default -> throw new CastException("Bad cast: " + vFrom + " to String");
+            };
+
+            case TyInt ignored -> switch (vFrom) {
+                case VString vs when vs.getValue().matches("-?\\d+") -> VInt.of(Integer.parseInt(vs.getValue()));
+                case VBool vb -> VInt.of(vb.getValue() ? 1 : 0);
+                case VInt vi -> vi;
+                default -> throw new CastException("Bad cast: " + vFrom + " to Int");
+            };
+
+            case TyUnit ignored -> switch (vFrom) {
+                case VUnit vu -> vu;
+                default -> throw new CastException("Bad cast: " + vFrom + " to Unit");
+            };
+
+            case TyBool ignored -> switch (vFrom) {
+                case VBool vb -> vb;
+                case VString vs when vs.getValue().equals("true") -> VBool.of(true);
+                case VString vs when vs.getValue().equals("false") -> VBool.of(false);
+                default -> throw new CastException("Invalid cast from " + vFrom + " to Bool");
+            };
+
+            default -> throw new CastException("Bad cast: " + vFrom + " to " + ty);
+        };
+    }
+
+    // As cast, but reports a failed cast as a runtime error of the running program
+    public static Value castOrFail(Value vFrom, Type ty) {
+        try {
+            return cast(vFrom, ty);
+        } catch (CastException ex) {
+            throw new RuntimeException("Invalid cast: " + ex.getMessage());
+        }
+    }
+
+    // Replaces the sink that printed lines go to, flushing the current one
+    public static void setOutput(OutputSink sink) {
+        output.flush();
+        output = sink;
+    }
+
+    public static void print(String s) {
+        output.println(s);
+    }
+
+    // Writes out any output still held back; called when a program ends
+    public static void flushOutput() {
+        output.flush();
+    }
+
+    // Flushes output first, so a prompt printed just before is visible
+    public static String readLine() {
+        output.flush();
+        return reader.readLine();
+    }
+
+}
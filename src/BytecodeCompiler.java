@@ -0,0 +1,172 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compiles a resolved program to the stack bytecode described in
+ * BytecodeProgram. Let binders and parameters use the frame slots assigned by
+ * the Resolver, so a function's locals are exactly its frame. Operands are
+ * evaluated left to right, as in Interp.
+ */
+public class BytecodeCompiler {
+
+    private final IntMap<Integer> fnIndices = new IntMap<>();
+    private final List<Value> constants = new ArrayList<>();
+    private final Map<Value, Integer> constantIndices = new HashMap<>();
+
+    // State for the function currently being compiled
+    private int[] code;
+    private int length;
+    private int stackDepth;
+    private int maxStack;
+
+    public BytecodeProgram compileProgram(Program prog) {
+        List<FnDef> defs = prog.getFunctionDefs();
+        for (int i = 0; i < defs.size(); i++) {
+            fnIndices.put(defs.get(i).getFnSymbol(), i);
+        }
+        BytecodeProgram.Function[] functions = new BytecodeProgram.Function[defs.size()];
+        for (int i = 0; i < defs.size(); i++) {
+            FnDef def = defs.get(i);
+            functions[i] = compileFunction(def.getFnName(), def.getParams().size(),
+                    def.getFrameSize(), def.getBody());
+        }
+        BytecodeProgram.Function main = compileFunction("main", 0,
+                prog.getMainFrameSize(), prog.getMainExpr());
+        return new BytecodeProgram(functions, main, constants.toArray(new Value[0]));
+    }
+
+    private BytecodeProgram.Function compileFunction(String name, int arity, int frameSize, Expr body) {
+        code = new int[16];
+        length = 0;
+        stackDepth = 0;
+        maxStack = 0;
+        compileExpr(body);
+        emit(BytecodeProgram.RETURN, -1);
+        return new BytecodeProgram.Function(name, arity, frameSize, maxStack, Arrays.copyOf(code, length));
+    }
+
+    // Appends an opcode that changes the operand stack depth by stackEffect
+    private void emit(int opcode, int stackEffect) {
+        append(opcode);
+        stackDepth += stackEffect;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void emit(int opcode, int operand, int stackEffect) {
+        emit(opcode, stackEffect);
+        append(operand);
+    }
+
+    private void append(int word) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = word;
+    }
+
+    // Values are immutable, so every use of a literal can share one pooled instance
+    private int constant(Value v) {
+        return constantIndices.computeIfAbsent(v, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+    }
+
+    private static int castType(Type ty) {
+        for (int i = 0; i < BytecodeProgram.CAST_TYPES.length; i++) {
+            if (BytecodeProgram.CAST_TYPES[i] == ty) {
+                return i;
+            }
+        }
+        throw new RuntimeException("Unexpected cast type: " + ty);
+    }
+
+    private static int binOpCode(EBinOp.Op op) {
+        return switch (op) {
+            case ADD -> BytecodeProgram.ADD;
+            case SUB -> BytecodeProgram.SUB;
+            case MUL -> BytecodeProgram.MUL;
+            case DIV -> BytecodeProgram.DIV;
+            case MOD -> BytecodeProgram.MOD;
+            case GT -> BytecodeProgram.GT;
+            case LT -> BytecodeProgram.LT;
+            case EQ -> BytecodeProgram.EQ;
+            case AND -> BytecodeProgram.AND;
+            case OR -> BytecodeProgram.OR;
+        };
+    }
+
+    // Emits code that leaves the value of e on top of the operand stack
+    private void compileExpr(Expr e) {
+        switch (e) {
+            case EInt ei -> emit(BytecodeProgram.PUSH_CONST, constant(ei.asValue()), 1);
+            case EBool eb -> emit(eb.getValue() ? BytecodeProgram.PUSH_TRUE : BytecodeProgram.PUSH_FALSE, 1);
+            case EString es -> emit(BytecodeProgram.PUSH_CONST, constant(es.asValue()), 1);
+            case EUnit ignored -> emit(BytecodeProgram.PUSH_UNIT, 1);
+            case EVar ev -> emit(BytecodeProgram.LOAD, ev.getSlot(), 1);
+            case EBinOp binOp -> {
+                compileExpr(binOp.getE1());
+                compileExpr(binOp.getE2());
+                emit(binOpCode(binOp.getOp()), -1);
+            }
+            case ENot en -> {
+                compileExpr(en.getExpr());
+                emit(BytecodeProgram.NOT, 0);
+            }
+            case ELet el -> {
+                compileExpr(el.getSubject());
+                emit(BytecodeProgram.STORE, el.getSlot(), -1);
+                compileExpr(el.getContinuation());
+            }
+            case ECond ec -> {
+                compileExpr(ec.getTest());
+                emit(BytecodeProgram.JUMP_IF_FALSE, 0, -1);
+                int elseJump = length - 1;
+                compileExpr(ec.getThenBranch());
+                emit(BytecodeProgram.JUMP, 0, 0);
+                int endJump = length - 1;
+                // Only one branch runs, so the else branch starts from the depth before the then branch
+                stackDepth--;
+                code[elseJump] = length;
+                compileExpr(ec.getElseBranch());
+                code[endJump] = length;
+            }
+            case EFnCall efc -> {
+                for (Expr arg : efc.getArgs()) {
+                    compileExpr(arg);
+                }
+                Integer index = fnIndices.get(efc.getFnSymbol());
+                if (index == null) {
+                    // Only an error if the call is actually reached, as in Interp
+                    emit(BytecodeProgram.UNDEFINED, constant(new VString(efc.getFnName())), 1 - efc.getArgs().size());
+                } else if (efc.isTailCall()) {
+                    // Any code after this (a jump to the RETURN, or the RETURN) is never reached
+                    emit(BytecodeProgram.TAILCALL, index, 1 - efc.getArgs().size());
+                } else {
+                    emit(BytecodeProgram.CALL, index, 1 - efc.getArgs().size());
+                }
+            }
+            case EConcat ec -> {
+                for (Expr expr : ec.getExprs()) {
+                    compileExpr(expr);
+                }
+                emit(BytecodeProgram.CONCAT, ec.getExprs().size(), 1 - ec.getExprs().size());
+            }
+            case EPrint ep -> {
+                compileExpr(ep.getExpr());
+                emit(BytecodeProgram.PRINT, 0);
+            }
+            case EGetInput ignored -> emit(BytecodeProgram.GET_INPUT, 1);
+            case ECast ec -> {
+                compileExpr(ec.getExpr());
+                emit(BytecodeProgram.CAST, castType(ec.getType()), 0);
+            }
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import ast.*;
+
+/*
+ * A program compiled to stack bytecode by BytecodeCompiler and run by
+ * BytecodeVM. Each function is a flat int[] of opcodes, each followed by its
+ * inline operands (listed next to the opcode below). Jump targets are absolute
+ * offsets into the same array. Int and string literals live in a constant
+ * pool shared by all functions, and every function records how many local
+ * slots and how much operand stack it needs, so the VM can set up its frame
+ * in one step.
+ */
+public class BytecodeProgram {
+
+    public static final int PUSH_TRUE = 0;
+    public static final int PUSH_FALSE = 1;
+    public static final int PUSH_UNIT = 2;
+    public static final int PUSH_CONST = 3;     // constant pool index
+    public static final int LOAD = 4;           // slot
+    public static final int STORE = 5;          // slot
+    public static final int ADD = 6;
+    public static final int SUB = 7;
+    public static final int MUL = 8;
+    public static final int DIV = 9;
+    public static final int MOD = 10;
+    public static final int GT = 11;
+    public static final int LT = 12;
+    public static final int EQ = 13;
+    public static final int AND = 14;
+    public static final int OR = 15;
+    public static final int NOT = 16;
+    public static final int JUMP = 17;          // target
+    public static final int JUMP_IF_FALSE = 18; // target
+    public static final int CALL = 19;          // function index
+    public static final int RETURN = 20;
+    public static final int CONCAT = 21;        // number of strings
+    public static final int PRINT = 22;
+    public static final int GET_INPUT = 23;
+    public static final int CAST = 24;          // index into CAST_TYPES
+    public static final int UNDEFINED = 25;     // constant pool index of the function's name
+    public static final int TAILCALL = 26;      // function index; replaces the current frame
+
+    private static final String[] NAMES = {
+        "PUSH_TRUE", "PUSH_FALSE", "PUSH_UNIT", "PUSH_CONST", "LOAD", "STORE", "ADD", "SUB",
+        "MUL", "DIV", "MOD", "GT", "LT", "EQ", "AND", "OR", "NOT", "JUMP", "JUMP_IF_FALSE",
+        "CALL", "RETURN", "CONCAT", "PRINT", "GET_INPUT", "CAST", "UNDEFINED", "TAILCALL"
+    };
+
+    // Number of inline operands following each opcode
+    private static final int[] OPERANDS = {
+        0, 0, 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1,
+        0, 1, 0, 0, 1, 1, 1
+    };
+
+    public static final Type[] CAST_TYPES = {
+        TyInt.type(), TyBool.type(), TyString.type(), TyUnit.type()
+    };
+
+    public static class Function {
+        public final String name;
+        public final int arity;
+        public final int maxLocals;
+        public final int maxStack;
+        public final int[] code;
+
+        public Function(String name, int arity, int maxLocals, int maxStack, int[] code) {
+            this.name = name;
+            this.arity = arity;
+            this.maxLocals = maxLocals;
+            this.maxStack = maxStack;
+            this.code = code;
+        }
+    }
+
+    private final Function[] functions;
+    private final Function main;
+    private final Value[] constants;
+
+    public BytecodeProgram(Function[] functions, Function main, Value[] constants) {
+        this.functions = functions;
+        this.main = main;
+        this.constants = constants;
+    }
+
+    public Function[] getFunctions() {
+        return functions;
+    }
+
+    public Function getMain() {
+        return main;
+    }
+
+    public Value[] getConstants() {
+        return constants;
+    }
+
+    private static String disassemble(Function fn) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s (arity %d, locals %d, stack %d):%n",
+                fn.name, fn.arity, fn.maxLocals, fn.maxStack));
+        int pc = 0;
+        while (pc < fn.code.length) {
+            int op = fn.code[pc];
+            sb.append(String.format("  %4d  %s", pc, NAMES[op]));
+            for (int i = 1; i <= OPERANDS[op]; i++) {
+                sb.append(' ').append(fn.code[pc + i]);
+            }
+            sb.append(System.lineSeparator());
+            pc += 1 + OPERANDS[op];
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < constants.length; i++) {
+            sb.append(String.format("const %d: %s%n", i, constants[i]));
+        }
+        for (Function fn : functions) {
+            sb.append(disassemble(fn));
+        }
+        sb.append(disassemble(main));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,189 @@
+import ast.*;
+
+import java.util.Arrays;
+
+/*
+ * Runs the stack bytecode produced by BytecodeCompiler in a single dispatch
+ * loop. All frames live in one Value[] stack: a frame's locals start at its
+ * base pointer and its operand stack sits directly above them. A call leaves
+ * the arguments where the caller pushed them, and they become the first
+ * locals of the callee, so nothing is copied. Return addresses live in their
+ * own arrays, so recursion depth is bounded by the heap, not the Java stack.
+ * A tail call moves its arguments down over the caller's frame and saves no
+ * return address, so loops written as tail recursion run in constant space.
+ */
+public class BytecodeVM {
+
+    private static final int INITIAL_STACK = 1024;
+    private static final int INITIAL_FRAMES = 256;
+
+    private Value[] stack = new Value[INITIAL_STACK];
+
+    // Saved caller state, one entry per active call
+    private BytecodeProgram.Function[] callerFns = new BytecodeProgram.Function[INITIAL_FRAMES];
+    private int[] callerPcs = new int[INITIAL_FRAMES];
+    private int[] callerBps = new int[INITIAL_FRAMES];
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    private void ensureFrames(int count) {
+        if (count > callerPcs.length) {
+            int newLength = callerPcs.length * 2;
+            callerFns = Arrays.copyOf(callerFns, newLength);
+            callerPcs = Arrays.copyOf(callerPcs, newLength);
+            callerBps = Arrays.copyOf(callerBps, newLength);
+        }
+    }
+
+    public Value run(BytecodeProgram prog) {
+        BytecodeProgram.Function[] functions = prog.getFunctions();
+        Value[] constants = prog.getConstants();
+
+        BytecodeProgram.Function fn = prog.getMain();
+        int[] code = fn.code;
+        int pc = 0;
+        int bp = 0;
+        int sp = fn.maxLocals;
+        int depth = 0;
+        ensureStack(fn.maxLocals + fn.maxStack);
+        Value[] stack = this.stack;
+
+        while (true) {
+            switch (code[pc++]) {
+                case BytecodeProgram.PUSH_TRUE -> stack[sp++] = VBool.TRUE;
+                case BytecodeProgram.PUSH_FALSE -> stack[sp++] = VBool.FALSE;
+                case BytecodeProgram.PUSH_UNIT -> stack[sp++] = VUnit.UNIT;
+                case BytecodeProgram.PUSH_CONST -> stack[sp++] = constants[code[pc++]];
+                case BytecodeProgram.LOAD -> stack[sp++] = stack[bp + code[pc++]];
+                case BytecodeProgram.STORE -> stack[bp + code[pc++]] = stack[--sp];
+                case BytecodeProgram.ADD -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = VInt.of(Builtins.unwrapInt(stack[sp - 1]) + Builtins.unwrapInt(right));
+                }
+                case BytecodeProgram.SUB -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = VInt.of(Builtins.unwrapInt(stack[sp - 1]) - Builtins.unwrapInt(right));
+                }
+                case BytecodeProgram.MUL -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = VInt.of(Builtins.unwrapInt(stack[sp - 1]) * Builtins.unwrapInt(right));
+                }
+                case BytecodeProgram.DIV -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = Builtins.evalBinOp(EBinOp.Op.DIV, stack[sp - 1], right);
+                }
+                case BytecodeProgram.MOD -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = Builtins.evalBinOp(EBinOp.Op.MOD, stack[sp - 1], right);
+                }
+                case BytecodeProgram.GT -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = VBool.of(Builtins.unwrapInt(stack[sp - 1]) > Builtins.unwrapInt(right));
+                }
+                case BytecodeProgram.LT -> {
+                    Value right = stack[--sp];
+                    stack[sp - 1] = VBool.of(Builtins.unwrapInt(stack[sp - 1]) < Builtins.unwrapInt(right));
+                }
+                case BytecodeProgram.EQ -> {
+                    Value right = stack[--sp];
+                    Value left = stack[sp - 1];
+                    if (left instanceof VInt l && right instanceof VInt r) {
+                        stack[sp - 1] = VBool.of(l.getValue() == r.getValue());
+                    } else {
+                        stack[sp - 1] = VBool.of(left == right || left.equals(right));
+                    }
+                }
+                case BytecodeProgram.AND -> {
+                    Value right = stack[--sp];
+                    boolean l = Builtins.unwrapBool(stack[sp - 1]);
+                    stack[sp - 1] = VBool.of(l & Builtins.unwrapBool(right));
+                }
+                case BytecodeProgram.OR -> {
+                    Value right = stack[--sp];
+                    boolean l = Builtins.unwrapBool(stack[sp - 1]);
+                    stack[sp - 1] = VBool.of(l | Builtins.unwrapBool(right));
+                }
+                case BytecodeProgram.NOT -> stack[sp - 1] = VBool.of(!Builtins.unwrapBool(stack[sp - 1]));
+                case BytecodeProgram.JUMP -> pc = code[pc];
+                case BytecodeProgram.JUMP_IF_FALSE -> {
+                    if (Builtins.unwrapBool(stack[--sp])) {
+                        pc++;
+                    } else {
+                        pc = code[pc];
+                    }
+                }
+                case BytecodeProgram.CALL -> {
+                    BytecodeProgram.Function callee = functions[code[pc++]];
+                    ensureFrames(depth + 1);
+                    callerFns[depth] = fn;
+                    callerPcs[depth] = pc;
+                    callerBps[depth] = bp;
+                    depth++;
+                    // The arguments on top of the operand stack become the callee's first locals
+                    bp = sp - callee.arity;
+                    sp = bp + callee.maxLocals;
+                    if (sp + callee.maxStack > stack.length) {
+                        ensureStack(sp + callee.maxStack);
+                        stack = this.stack;
+                    }
+                    fn = callee;
+                    code = fn.code;
+                    pc = 0;
+                }
+                case BytecodeProgram.TAILCALL -> {
+                    BytecodeProgram.Function callee = functions[code[pc]];
+                    System.arraycopy(stack, sp - callee.arity, stack, bp, callee.arity);
+                    sp = bp + callee.maxLocals;
+                    if (sp + callee.maxStack > stack.length) {
+                        ensureStack(sp + callee.maxStack);
+                        stack = this.stack;
+                    }
+                    fn = callee;
+                    code = fn.code;
+                    pc = 0;
+                }
+                case BytecodeProgram.RETURN -> {
+                    Value result = stack[sp - 1];
+                    if (depth == 0) {
+                        return result;
+                    }
+                    depth--;
+                    sp = bp;
+                    stack[sp++] = result;
+                    fn = callerFns[depth];
+                    pc = callerPcs[depth];
+                    bp = callerBps[depth];
+                    code = fn.code;
+                }
+                case BytecodeProgram.CONCAT -> {
+                    int count = code[pc++];
+                    VString result = VString.EMPTY;
+                    for (int i = sp - count; i < sp; i++) {
+                        result = Builtins.concat(result, stack[i]);
+                    }
+                    sp -= count;
+                    stack[sp++] = result;
+                }
+                case BytecodeProgram.PRINT -> {
+                    Builtins.print(Builtins.unwrapString(stack[sp - 1]));
+                    stack[sp - 1] = VUnit.UNIT;
+                }
+                case BytecodeProgram.GET_INPUT -> stack[sp++] = new VString(Builtins.readLine());
+                case BytecodeProgram.CAST ->
+                        stack[sp - 1] = Builtins.castOrFail(stack[sp - 1], BytecodeProgram.CAST_TYPES[code[pc++]]);
+                case BytecodeProgram.UNDEFINED -> throw new RuntimeException(
+                        "Function not defined: " + Builtins.unwrapString(constants[code[pc]]));
+                default -> throw new IllegalStateException("Bad opcode " + code[pc - 1] + " in " + fn.name);
+            }
+        }
+    }
+
+    // Compiles and runs a program that has already been through the Resolver
+    public Value runProgram(Program prog) {
+        return run((new BytecodeCompiler()).compileProgram(prog));
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Just enough of the JVM class file format for JvmCompiler: a public final
+ * class extending Object with static methods. Classes are written as version
+ * 49 (Java 5), the last version verified by type inference, so methods don't
+ * need StackMapTable frames. Each Method collects its bytecode and patches its
+ * own forward jumps.
+ */
+public class ClassFileWriter {
+
+    private static final int VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final String className;
+    private final List<Method> methods = new ArrayList<>();
+
+    public ClassFileWriter(String className) {
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    // Adds a constant pool entry, reusing an identical earlier one
+    private int constant(String key, int tag, DataWriter body) {
+        Integer existing = poolIndices.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            pool.writeByte(tag);
+            body.write(pool);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (poolCount > 0xFFFF) {
+            throw new RuntimeException("Class " + className + " has too many constants");
+        }
+        poolIndices.put(key, poolCount);
+        return poolCount++;
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public int utf8(String s) {
+        return constant("U" + s, CONSTANT_UTF8, out -> out.writeUTF(s));
+    }
+
+    public int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, CONSTANT_CLASS, out -> out.writeShort(name));
+    }
+
+    public int string(String s) {
+        int value = utf8(s);
+        return constant("S" + s, CONSTANT_STRING, out -> out.writeShort(value));
+    }
+
+    public int integer(int n) {
+        return constant("I" + n, CONSTANT_INTEGER, out -> out.writeInt(n));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + " " + descriptor, CONSTANT_NAME_AND_TYPE, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("M" + owner + "." + name + descriptor, CONSTANT_METHODREF, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        return constant("F" + owner + "." + name + descriptor, CONSTANT_FIELDREF, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    public Method addStaticMethod(String name, String descriptor) {
+        Method method = new Method(utf8(name), utf8(descriptor));
+        methods.add(method);
+        return method;
+    }
+
+    public class Method {
+        private final int nameIndex;
+        private final int descriptorIndex;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private int maxStack;
+        private int maxLocals;
+        // Pairs of (operand position, branch offset) applied when the code is written
+        private final List<int[]> pendingPatches = new ArrayList<>();
+        private byte[] patched;
+
+        private Method(int nameIndex, int descriptorIndex) {
+            this.nameIndex = nameIndex;
+            this.descriptorIndex = descriptorIndex;
+        }
+
+        public int position() {
+            return code.size();
+        }
+
+        public void op(int opcode) {
+            code.write(opcode);
+        }
+
+        public void op1(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand);
+        }
+
+        public void op2(int opcode, int operand) {
+            code.write(opcode);
+            code.write(operand >> 8);
+            code.write(operand);
+        }
+
+        // Emits a branch with a placeholder offset and returns its position for patch()
+        public int jump(int opcode) {
+            int at = position();
+            op2(opcode, 0);
+            return at;
+        }
+
+        // Points the branch emitted at position jumpAt to the current position
+        public void patch(int jumpAt) {
+            int offset = position() - jumpAt;
+            if (offset > Short.MAX_VALUE) {
+                throw new RuntimeException("Method too large for the JVM backend");
+            }
+            pendingPatches.add(new int[] { jumpAt + 1, offset });
+        }
+
+        public void setMaxs(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        private byte[] bytes() {
+            if (patched == null) {
+                patched = code.toByteArray();
+                for (int[] p : pendingPatches) {
+                    patched[p[0]] = (byte) (p[1] >> 8);
+                    patched[p[0] + 1] = (byte) p[1];
+                }
+            }
+            return patched;
+        }
+    }
+
+    public byte[] toByteArray() {
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        int codeAttribute = utf8("Code");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (Method method : methods) {
+                byte[] code = method.bytes();
+                if (code.length > 0xFFFF) {
+                    throw new RuntimeException("Method too large for the JVM backend");
+                }
+                out.writeShort(ACC_PUBLIC | ACC_STATIC);
+                out.writeShort(method.nameIndex);
+                out.writeShort(method.descriptorIndex);
+                out.writeShort(1);
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + code.length);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // class attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
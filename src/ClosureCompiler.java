@@ -0,0 +1,183 @@
+import ast.*;
+
+import java.util.List;
+
+/*
+ * Closure-compilation backend. Instead of re-dispatching on the shape of each
+ * node every time it is visited (as Interp does), every expression is compiled
+ * once into a Code closure whose children, operator and callee are already
+ * fixed. Running the program is then just a chain of execute(frame) calls.
+ * Frames are the flat slot arrays assigned by the Resolver.
+ */
+public class ClosureCompiler {
+
+    @FunctionalInterface
+    public interface Code {
+        Value execute(Value[] frame);
+    }
+
+    // A compiled function. The body is filled in after every definition has a
+    // CompiledFn, so that calls can link directly to (mutually) recursive callees.
+    private static class CompiledFn {
+        private final int frameSize;
+        private Code body;
+
+        CompiledFn(int frameSize) {
+            this.frameSize = frameSize;
+        }
+    }
+
+    private final IntMap<CompiledFn> compiledFns = new IntMap<>();
+
+    // Compiles every definition and the main expression of a resolved program,
+    // returning the code for the main expression
+    public Code compileProgram(Program prog) {
+        for (FnDef fn : prog.getFunctionDefs()) {
+            compiledFns.put(fn.getFnSymbol(), new CompiledFn(fn.getFrameSize()));
+        }
+        for (FnDef fn : prog.getFunctionDefs()) {
+            compiledFns.get(fn.getFnSymbol()).body = compileExpr(fn.getBody());
+        }
+        return compileExpr(prog.getMainExpr());
+    }
+
+    // Compiles and runs a program that has already been through the Resolver
+    public Value runProgram(Program prog) {
+        Code main = compileProgram(prog);
+        return main.execute(new Value[prog.getMainFrameSize()]);
+    }
+
+    public Code compileExpr(Expr e) {
+        return switch (e) {
+            case EInt ei -> {
+                VInt v = ei.asValue();
+                yield frame -> v;
+            }
+            case EBool eb -> {
+                VBool v = eb.asValue();
+                yield frame -> v;
+            }
+            case EString es -> {
+                VString v = es.asValue();
+                yield frame -> v;
+            }
+            case EUnit ignored -> frame -> VUnit.UNIT;
+            case EVar ev -> {
+                int slot = ev.getSlot();
+                yield frame -> frame[slot];
+            }
+            case EBinOp binOp -> compileBinOp(binOp.getOp(), compileExpr(binOp.getE1()), compileExpr(binOp.getE2()));
+            case ENot en -> {
+                Code inner = compileExpr(en.getExpr());
+                yield frame -> VBool.of(!Builtins.unwrapBool(inner.execute(frame)));
+            }
+            case ELet el -> {
+                int slot = el.getSlot();
+                Code subject = compileExpr(el.getSubject());
+                Code continuation = compileExpr(el.getContinuation());
+                yield frame -> {
+                    frame[slot] = subject.execute(frame);
+                    return continuation.execute(frame);
+                };
+            }
+            case ECond ec -> {
+                Code test = compileExpr(ec.getTest());
+                Code thenBranch = compileExpr(ec.getThenBranch());
+                Code elseBranch = compileExpr(ec.getElseBranch());
+                yield frame -> Builtins.unwrapBool(test.execute(frame))
+                        ? thenBranch.execute(frame)
+                        : elseBranch.execute(frame);
+            }
+            case EFnCall efc -> compileCall(efc);
+            case EConcat ec -> {
+                Code[] parts = compileAll(ec.getExprs());
+                yield frame -> {
+                    VString result = VString.EMPTY;
+                    for (Code part : parts) {
+                        result = Builtins.concat(result, part.execute(frame));
+                    }
+                    return result;
+                };
+            }
+            case EPrint ep -> {
+                Code inner = compileExpr(ep.getExpr());
+                yield frame -> {
+                    Builtins.print(Builtins.unwrapString(inner.execute(frame)));
+                    return VUnit.UNIT;
+                };
+            }
+            case EGetInput ignored -> frame -> new VString(Builtins.readLine());
+            case ECast ec -> {
+                Code inner = compileExpr(ec.getExpr());
+                Type ty = ec.getType();
+                yield frame -> Builtins.castOrFail(inner.execute(frame), ty);
+            }
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        };
+    }
+
+    private Code[] compileAll(List<Expr> exprs) {
+        Code[] codes = new Code[exprs.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = compileExpr(exprs.get(i));
+        }
+        return codes;
+    }
+
+    private Code compileCall(EFnCall efc) {
+        CompiledFn fn = compiledFns.get(efc.getFnSymbol());
+        if (fn == null) {
+            // Only an error if the call is actually reached, as in Interp
+            return frame -> {
+                throw new RuntimeException("Function not defined: " + efc.getFnName());
+            };
+        }
+        Code[] args = compileAll(efc.getArgs());
+        return frame -> {
+            // Parameters occupy the first slots of the callee's frame
+            Value[] newFrame = new Value[fn.frameSize];
+            for (int i = 0; i < args.length; i++) {
+                newFrame[i] = args[i].execute(frame);
+            }
+            return fn.body.execute(newFrame);
+        };
+    }
+
+    private Code compileBinOp(EBinOp.Op op, Code left, Code right) {
+        return switch (op) {
+            case ADD -> frame -> VInt.of(Builtins.unwrapInt(left.execute(frame)) + Builtins.unwrapInt(right.execute(frame)));
+            case SUB -> frame -> VInt.of(Builtins.unwrapInt(left.execute(frame)) - Builtins.unwrapInt(right.execute(frame)));
+            case MUL -> frame -> VInt.of(Builtins.unwrapInt(left.execute(frame)) * Builtins.unwrapInt(right.execute(frame)));
+            case DIV -> frame -> {
+                int l = Builtins.unwrapInt(left.execute(frame));
+                int r = Builtins.unwrapInt(right.execute(frame));
+                if (r == 0) throw new RuntimeException("Division by zero");
+                return VInt.of(l / r);
+            };
+            case MOD -> frame -> {
+                int l = Builtins.unwrapInt(left.execute(frame));
+                int r = Builtins.unwrapInt(right.execute(frame));
+                if (r == 0) throw new RuntimeException("Modulo by zero");
+                return VInt.of(l % r);
+            };
+            case GT  -> frame -> VBool.of(Builtins.unwrapInt(left.execute(frame)) > Builtins.unwrapInt(right.execute(frame)));
+            case LT  -> frame -> VBool.of(Builtins.unwrapInt(left.execute(frame)) < Builtins.unwrapInt(right.execute(frame)));
+            case EQ  -> frame -> {
+                Value l = left.execute(frame);
+                Value r = right.execute(frame);
+                return VBool.of(l == r || l.equals(r));
+            };
+            // Both operands are always evaluated, as in Interp
+            case AND -> frame -> {
+                boolean l = Builtins.unwrapBool(left.execute(frame));
+                boolean r = Builtins.unwrapBool(right.execute(frame));
+                return VBool.of(l && r);
+            };
+            case OR  -> frame -> {
+                boolean l = Builtins.unwrapBool(left.execute(frame));
+                boolean r = Builtins.unwrapBool(right.execute(frame));
+                return VBool.of(l || r);
+            };
+        };
+    }
+}
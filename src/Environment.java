@@ -1,45 +1,74 @@
+import ast.Symbols;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 /*
- * An immutable map from strings to another type. We will use this for both
+ * An immutable map from variables to another type. We will use this for both
  * type environments and runtime value environments.
+ *
+ * Environments are persistent: each binding is a single node pointing at the
+ * environment it extends, so extend is O(1) and every older environment stays
+ * valid and shares its bindings with the newer ones. Lookup walks the chain
+ * from the newest binding, which also gives us shadowing for free.
+ *
+ * Variables are given by their symbols (see ast.Symbols), so the walk only
+ * compares ints.
  */
 public class Environment<T> {
 
-    // Internal (mutable) map
-    private Map<String, T> env;
+    private final int var;
+    private final T value;
+    // null only for the empty environment at the end of every chain
+    private final Environment<T> parent;
 
     public Environment() {
-        this.env = new LinkedHashMap<>();
+        this(-1, null, null);
     }
 
-    private void setEnv(Map<String, T> env) {
-        this.env = env;
+    private Environment(int var, T value, Environment<T> parent) {
+        this.var = var;
+        this.value = value;
+        this.parent = parent;
     }
 
-    public T lookup(String var) throws RuntimeException {
-        if (env.containsKey(var)) {
-            return env.get(var);
-        } else {
-            throw new RuntimeException("Variable lookup failed for variable " + var + ".");
+    public T lookup(int var) throws RuntimeException {
+        for (Environment<T> env = this; env.parent != null; env = env.parent) {
+            if (env.var == var) {
+                return env.value;
+            }
         }
+        throw new RuntimeException("Variable lookup failed for variable " + Symbols.name(var) + ".");
     }
 
-    public Environment<T> extend(String var, T t) {
-        Map<String, T> newEnv = new LinkedHashMap<>();
-        for (Entry<String, T> entry : env.entrySet()) {
-            newEnv.put(entry.getKey(), entry.getValue());
+    public boolean contains(int var) {
+        for (Environment<T> env = this; env.parent != null; env = env.parent) {
+            if (env.var == var) {
+                return true;
+            }
         }
-        newEnv.put(var, t);
-        Environment<T> newEnvironment = new Environment<>();
-        newEnvironment.setEnv(newEnv);
-        return newEnvironment;
+        return false;
+    }
+
+    public Environment<T> extend(int var, T t) {
+        return new Environment<>(var, t, this);
     }
 
     public void dump() {
-        for (Entry<String, T> e : env.entrySet()) {
+        // Replay the bindings oldest-first so a shadowed variable prints once,
+        // with its visible value, just like the old map-backed version did.
+        Deque<Environment<T>> chain = new ArrayDeque<>();
+        for (Environment<T> env = this; env.parent != null; env = env.parent) {
+            chain.push(env);
+        }
+        Map<String, T> visible = new LinkedHashMap<>();
+        for (Environment<T> env : chain) {
+            visible.put(Symbols.name(env.var), env.value);
+        }
+        for (Entry<String, T> e : visible.entrySet()) {
             System.out.println(e.getKey() + ": " + e.getValue());
         }
     }
@@ -0,0 +1,219 @@
+import ast.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A tree-walking interpreter that keeps its continuation on the heap instead
+ * of the Java stack, so recursion depth is limited only by heap size. It has
+ * the same semantics as Interp, including left-to-right evaluation order.
+ *
+ * The continuation is an explicit work stack of (expression, phase) pairs.
+ * An EVAL entry evaluates the expression: leaves push their value, and other
+ * nodes push an APPLY entry for themselves below entries for their operands.
+ * APPLY pops the operands' values and finishes the node, which for lets,
+ * conditionals and calls means scheduling another expression. A call saves
+ * the caller's frame and pushes a RETURN entry that restores it; a call whose
+ * continuation is already a RETURN doesn't need to, so tail calls run in
+ * constant space.
+ */
+public class HeapInterp {
+
+    private static final byte EVAL = 0;
+    private static final byte APPLY = 1;
+    private static final byte RETURN = 2;
+
+    private static final int INITIAL_SIZE = 256;
+
+    private final IntMap<FnDef> fnDefs = new IntMap<>();
+
+    // Work stack of pending expressions and what to do with them
+    private Expr[] work = new Expr[INITIAL_SIZE];
+    private byte[] phases = new byte[INITIAL_SIZE];
+    private int workTop = 0;
+
+    // Values of evaluated operands, waiting for their APPLY entry
+    private Value[] values = new Value[INITIAL_SIZE];
+    private int valueTop = 0;
+
+    // Frames of the callers with a pending RETURN entry
+    private Value[][] frames = new Value[INITIAL_SIZE][];
+    private int frameTop = 0;
+
+    private void push(Expr e, byte phase) {
+        if (workTop == work.length) {
+            work = Arrays.copyOf(work, workTop * 2);
+            phases = Arrays.copyOf(phases, workTop * 2);
+        }
+        work[workTop] = e;
+        phases[workTop++] = phase;
+    }
+
+    // Schedules the operands so that they are evaluated left to right
+    private void pushOperands(List<Expr> operands) {
+        for (int i = operands.size() - 1; i >= 0; i--) {
+            push(operands.get(i), EVAL);
+        }
+    }
+
+    private void pushValue(Value v) {
+        if (valueTop == values.length) {
+            values = Arrays.copyOf(values, valueTop * 2);
+        }
+        values[valueTop++] = v;
+    }
+
+    private Value popValue() {
+        Value v = values[--valueTop];
+        values[valueTop] = null;
+        return v;
+    }
+
+    private void pushFrame(Value[] frame) {
+        if (frameTop == frames.length) {
+            frames = Arrays.copyOf(frames, frameTop * 2);
+        }
+        frames[frameTop++] = frame;
+    }
+
+    private FnDef lookupFn(EFnCall efc) {
+        FnDef fn = fnDefs.get(efc.getFnSymbol());
+        if (fn == null) throw new RuntimeException("Function not defined: " + efc.getFnName());
+        return fn;
+    }
+
+    // Variables and literals have no effects and can't fail, so they can be
+    // evaluated on the spot instead of going through the work stack
+    private static boolean isImmediate(Expr e) {
+        return e instanceof EVar || e instanceof EInt || e instanceof EBool || e instanceof EString;
+    }
+
+    private static Value immediate(Value[] frame, Expr e) {
+        return switch (e) {
+            case EVar ev -> frame[ev.getSlot()];
+            case EInt ei -> ei.asValue();
+            case EBool eb -> eb.asValue();
+            case EString es -> es.asValue();
+            default -> throw new RuntimeException("Not an immediate expression: " + e);
+        };
+    }
+
+    // Evaluates e in the given frame and returns its value
+    public Value interpExpr(Value[] frame, Expr e) {
+        int bottom = workTop;
+        push(e, EVAL);
+        while (workTop > bottom) {
+            Expr current = work[--workTop];
+            byte phase = phases[workTop];
+            work[workTop] = null;
+            if (phase == EVAL) {
+                switch (current) {
+                    case EInt ei -> pushValue(ei.asValue());
+                    case EBool eb -> pushValue(eb.asValue());
+                    case EString es -> pushValue(es.asValue());
+                    case EUnit ignored -> pushValue(VUnit.UNIT);
+                    case EVar ev -> pushValue(frame[ev.getSlot()]);
+                    case EGetInput ignored -> pushValue(new VString(Builtins.readLine()));
+                    case EBinOp binOp when isImmediate(binOp.getE1()) && isImmediate(binOp.getE2()) ->
+                            pushValue(Builtins.evalBinOp(binOp.getOp(),
+                                    immediate(frame, binOp.getE1()), immediate(frame, binOp.getE2())));
+                    case EBinOp binOp -> {
+                        push(current, APPLY);
+                        push(binOp.getE2(), EVAL);
+                        push(binOp.getE1(), EVAL);
+                    }
+                    case ENot en -> {
+                        push(current, APPLY);
+                        push(en.getExpr(), EVAL);
+                    }
+                    case ELet el -> {
+                        push(current, APPLY);
+                        push(el.getSubject(), EVAL);
+                    }
+                    case ECond ec -> {
+                        push(current, APPLY);
+                        push(ec.getTest(), EVAL);
+                    }
+                    case EFnCall efc -> {
+                        // As in Interp, an undefined function is reported before its arguments run
+                        lookupFn(efc);
+                        push(current, APPLY);
+                        pushOperands(efc.getArgs());
+                    }
+                    case EConcat ec -> {
+                        push(current, APPLY);
+                        pushOperands(ec.getExprs());
+                    }
+                    case EPrint ep -> {
+                        push(current, APPLY);
+                        push(ep.getExpr(), EVAL);
+                    }
+                    case ECast ec -> {
+                        push(current, APPLY);
+                        push(ec.getExpr(), EVAL);
+                    }
+                    default -> throw new RuntimeException("Unrecognized expression type: " + current);
+                }
+            } else if (phase == APPLY) {
+                switch (current) {
+                    case EBinOp binOp -> {
+                        Value right = popValue();
+                        Value left = popValue();
+                        pushValue(Builtins.evalBinOp(binOp.getOp(), left, right));
+                    }
+                    case ENot ignored -> pushValue(VBool.of(!Builtins.unwrapBool(popValue())));
+                    case ELet el -> {
+                        frame[el.getSlot()] = popValue();
+                        push(el.getContinuation(), EVAL);
+                    }
+                    case ECond ec -> push(Builtins.unwrapBool(popValue())
+                            ? ec.getThenBranch()
+                            : ec.getElseBranch(), EVAL);
+                    case EFnCall efc -> {
+                        FnDef fn = lookupFn(efc);
+                        Value[] newFrame = new Value[fn.getFrameSize()];
+                        for (int i = efc.getArgs().size() - 1; i >= 0; i--) {
+                            newFrame[i] = popValue();
+                        }
+                        // Only keep the caller's frame if something still runs in it
+                        if (workTop > bottom && phases[workTop - 1] != RETURN) {
+                            pushFrame(frame);
+                            push(current, RETURN);
+                        }
+                        frame = newFrame;
+                        push(fn.getBody(), EVAL);
+                    }
+                    case EConcat ec -> {
+                        int count = ec.getExprs().size();
+                        VString result = VString.EMPTY;
+                        for (int i = valueTop - count; i < valueTop; i++) {
+                            result = Builtins.concat(result, values[i]);
+                        }
+                        for (int i = 0; i < count; i++) {
+                            popValue();
+                        }
+                        pushValue(result);
+                    }
+                    case EPrint ignored -> {
+                        Builtins.print(Builtins.unwrapString(popValue()));
+                        pushValue(VUnit.UNIT);
+                    }
+                    case ECast ec -> pushValue(Builtins.castOrFail(popValue(), ec.getType()));
+                    default -> throw new RuntimeException("Unrecognized expression type: " + current);
+                }
+            } else {
+                frame = frames[--frameTop];
+                frames[frameTop] = null;
+            }
+        }
+        return popValue();
+    }
+
+    // Runs a program that has already been through the Resolver
+    public Value interpProgram(Program prog) {
+        for (FnDef fn : prog.getFunctionDefs()) {
+            fnDefs.put(fn.getFnSymbol(), fn);
+        }
+        return interpExpr(new Value[prog.getMainFrameSize()], prog.getMainExpr());
+    }
+}
@@ -0,0 +1,198 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Parses and typechecks successive versions of a source (for -watch), redoing
+ * only the top-level defs that changed. The source is split at its defs as
+ * ParallelFrontEnd does, and each def that parsed and typechecked is kept,
+ * keyed by a hash of its text (which is compared in full on a hit). A def
+ * whose text is unchanged reuses the old FnDef and isn't parsed again; its
+ * calls are pointed at the new definitions of their callees. It is
+ * typechecked again only if a callee's signature changed or the callee is
+ * gone, since the signatures it calls are all a check of a body depends on.
+ * New and edited defs are parsed and checked in parallel.
+ *
+ * The last def is always parsed and checked again, as is the main expression,
+ * since where the last def ends isn't known until it is parsed.
+ *
+ * A source the split can't follow is compiled whole, so errors are reported
+ * as the sequential front end reports them, and a failed compile keeps what
+ * was known to be good from the previous one.
+ */
+public class IncrementalCompiler {
+
+    // A def that parsed and typechecked. The optimizer replaces bodies in
+    // place, so the checked body is kept to put back before the def is reused.
+    private static class Entry {
+        final String text;
+        final FnDef def;
+        final Expr body;
+        final List<EFnCall> calls;
+
+        Entry(String text, FnDef def) {
+            this.text = text;
+            this.def = def;
+            this.body = def.getBody();
+            this.calls = new ArrayList<>();
+            collectCalls(body, calls);
+        }
+    }
+
+    private Map<Long, Entry> entries = new HashMap<>();
+
+    // How many defs the last compile parsed and typechecked
+    private int parsedCount;
+    private int checkedCount;
+
+    public Program compile(String code) {
+        ParallelFrontEnd.Split split = ParallelFrontEnd.split(code);
+        Program prog = split == null ? null : compileSplit(code, split);
+        if (prog == null) {
+            // The defs kept so far stay good: they are relinked or checked
+            // against whatever they call when they are next reused
+            prog = (new Typecheck()).typecheckProgram(new RecursiveDescentParser(code).parseProgram());
+            parsedCount = checkedCount = prog.getFunctionDefs().size();
+        }
+        return prog;
+    }
+
+    public String stats() {
+        return "parsed " + parsedCount + " and checked " + checkedCount + " defs";
+    }
+
+    // Compiles the split source, or returns null if it has to be compiled whole
+    private Program compileSplit(String code, ParallelFrontEnd.Split split) {
+        int count = split.count;
+        FnDef[] defs = new FnDef[count];
+        Entry[] reused = new Entry[count];
+        Set<Entry> used = new HashSet<>();
+        long[] hashes = new long[count];
+        for (int i = 0; i < count - 1; i++) {
+            int start = split.starts[i];
+            int length = split.starts[i + 1] - start;
+            hashes[i] = hash(code, start, length);
+            Entry entry = entries.get(hashes[i]);
+            // The same text twice still makes two definitions
+            if (entry != null && entry.text.length() == length && code.regionMatches(start, entry.text, 0, length)
+                    && used.add(entry)) {
+                entry.def.setBody(entry.body);
+                reused[i] = entry;
+                defs[i] = entry.def;
+            }
+        }
+        Program prog = ParallelFrontEnd.parseSplit(code, split, defs);
+        if (prog == null) {
+            return null;
+        }
+
+        IntMap<FnDef> functionMap = Typecheck.functionMap(prog);
+        boolean[] recheck = new boolean[count];
+        List<FnDef> toCheck = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recheck[i] = reused[i] == null || !relink(reused[i], functionMap);
+            if (recheck[i]) {
+                toCheck.add(defs[i]);
+                // A reused def that fails its new check is no longer known to be good
+                if (reused[i] != null) {
+                    entries.remove(hashes[i]);
+                }
+            }
+        }
+        parsedCount = count - used.size();
+        checkedCount = toCheck.size();
+        Typecheck checker = new Typecheck();
+        checker.typecheckDefsParallel(functionMap, toCheck);
+        checker.typecheckExpr(functionMap, new Environment<>(), prog.getMainExpr());
+
+        Map<Long, Entry> checked = new HashMap<>();
+        for (int i = 0; i < count - 1; i++) {
+            Entry entry = recheck[i]
+                    ? new Entry(code.substring(split.starts[i], split.starts[i + 1]), defs[i])
+                    : reused[i];
+            checked.putIfAbsent(hashes[i], entry);
+        }
+        entries = checked;
+        return prog;
+    }
+
+    // A 64-bit FNV-1a hash of the characters, so a def is looked up without
+    // copying its text out of the source
+    private static long hash(String code, int start, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < start + length; i++) {
+            h = (h ^ code.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // Points the calls of a reused def at the new definitions of their
+    // callees. Returns false if the def has to be checked again, because a
+    // callee is gone or its signature changed.
+    private static boolean relink(Entry entry, IntMap<FnDef> functionMap) {
+        for (EFnCall call : entry.calls) {
+            FnDef callee = functionMap.get(call.getFnSymbol());
+            if (callee == null || !sameSignature(callee, call.getFnDef())) {
+                return false;
+            }
+        }
+        for (EFnCall call : entry.calls) {
+            call.setFnDef(functionMap.get(call.getFnSymbol()));
+        }
+        return true;
+    }
+
+    private static boolean sameSignature(FnDef a, FnDef b) {
+        if (a == b) {
+            return true;
+        }
+        if (!a.getReturnType().equals(b.getReturnType()) || a.getParams().size() != b.getParams().size()) {
+            return false;
+        }
+        for (int i = 0; i < a.getParams().size(); i++) {
+            if (!a.getParams().get(i).type.equals(b.getParams().get(i).type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void collectCalls(Expr e, List<EFnCall> calls) {
+        switch (e) {
+            case EBinOp binOp -> {
+                collectCalls(binOp.getE1(), calls);
+                collectCalls(binOp.getE2(), calls);
+            }
+            case ENot en -> collectCalls(en.getExpr(), calls);
+            case ELet el -> {
+                collectCalls(el.getSubject(), calls);
+                collectCalls(el.getContinuation(), calls);
+            }
+            case ECond ec -> {
+                collectCalls(ec.getTest(), calls);
+                collectCalls(ec.getThenBranch(), calls);
+                collectCalls(ec.getElseBranch(), calls);
+            }
+            case EFnCall efc -> {
+                calls.add(efc);
+                for (Expr arg : efc.getArgs()) {
+                    collectCalls(arg, calls);
+                }
+            }
+            case EConcat ec -> {
+                for (Expr part : ec.getExprs()) {
+                    collectCalls(part, calls);
+                }
+            }
+            case EPrint ep -> collectCalls(ep.getExpr(), calls);
+            case ECast ec -> collectCalls(ec.getExpr(), calls);
+            default -> {
+            }
+        }
+    }
+}
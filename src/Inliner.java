@@ -0,0 +1,216 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+ * Inlines calls to small non-recursive functions (-O2, before the Optimizer).
+ * A call f(a1, ..., an) becomes
+ *
+ *     let p1' = a1 in ... let pn' = an in <copy of f's body>
+ *
+ * so the arguments are still evaluated once each, left to right, before the
+ * body runs. The parameters are renamed to fresh names that can't appear in
+ * source programs, so they can't capture or be captured by the caller's
+ * variables. Bodies are deep-copied, since the Resolver stores per-occurrence
+ * state on the nodes.
+ *
+ * A function is only inlined if nothing it (transitively) calls calls it back,
+ * according to the call graph, and its body is at most MAX_INLINE_SIZE nodes.
+ * Each caller may grow by at most GROWTH_BUDGET nodes in total.
+ */
+public class Inliner {
+
+    static final int MAX_INLINE_SIZE = 24;
+    static final int GROWTH_BUDGET = 128;
+
+    private final IntMap<FnDef> fnDefs = new IntMap<>();
+    // The symbols of the recursive functions
+    private final BitSet recursive = new BitSet();
+
+    // Nodes the caller being rewritten may still grow by
+    private int budget;
+    private int freshNames = 0;
+
+    public Program inlineProgram(Program prog) {
+        for (FnDef fn : prog.getFunctionDefs()) {
+            fnDefs.put(fn.getFnSymbol(), fn);
+        }
+        findRecursive(prog.getFunctionDefs());
+        for (FnDef fn : prog.getFunctionDefs()) {
+            budget = GROWTH_BUDGET;
+            fn.setBody(inlineExpr(fn.getBody()));
+        }
+        budget = GROWTH_BUDGET;
+        prog.setMainExpr(inlineExpr(prog.getMainExpr()));
+        return prog;
+    }
+
+    // Marks every function that can reach itself through the call graph
+    private void findRecursive(List<FnDef> defs) {
+        BitSet defined = new BitSet();
+        for (FnDef fn : defs) {
+            defined.set(fn.getFnSymbol());
+        }
+        // Of two definitions of a name, the later is the one that is called
+        IntMap<BitSet> callees = new IntMap<>(defs.size());
+        for (FnDef fn : defs) {
+            BitSet called = new BitSet();
+            collectCalls(fn.getBody(), called);
+            called.and(defined);
+            callees.put(fn.getFnSymbol(), called);
+        }
+        for (FnDef def : defs) {
+            int fn = def.getFnSymbol();
+            BitSet seen = new BitSet();
+            List<Integer> pending = new ArrayList<>();
+            callees.get(fn).stream().forEach(pending::add);
+            while (!pending.isEmpty()) {
+                int next = pending.remove(pending.size() - 1);
+                if (next == fn) {
+                    recursive.set(fn);
+                    break;
+                }
+                if (!seen.get(next)) {
+                    seen.set(next);
+                    callees.get(next).stream().forEach(pending::add);
+                }
+            }
+        }
+    }
+
+    private static void collectCalls(Expr e, BitSet called) {
+        if (e instanceof EFnCall efc) {
+            called.set(efc.getFnSymbol());
+        }
+        for (Expr child : children(e)) {
+            collectCalls(child, called);
+        }
+    }
+
+    private static List<Expr> children(Expr e) {
+        return switch (e) {
+            case EBinOp binOp -> List.of(binOp.getE1(), binOp.getE2());
+            case ENot en -> List.of(en.getExpr());
+            case ELet el -> List.of(el.getSubject(), el.getContinuation());
+            case ECond ec -> List.of(ec.getTest(), ec.getThenBranch(), ec.getElseBranch());
+            case EFnCall efc -> efc.getArgs();
+            case EConcat ec -> ec.getExprs();
+            case EPrint ep -> List.of(ep.getExpr());
+            case ECast ec -> List.of(ec.getExpr());
+            default -> List.of();
+        };
+    }
+
+    private static int size(Expr e) {
+        int size = 1;
+        for (Expr child : children(e)) {
+            size += size(child);
+        }
+        return size;
+    }
+
+    // Returns e with the calls it contains inlined, as far as the budget allows
+    private Expr inlineExpr(Expr e) {
+        return switch (e) {
+            case EBinOp binOp -> typed(new EBinOp(inlineExpr(binOp.getE1()), binOp.getOp(),
+                    inlineExpr(binOp.getE2())), binOp);
+            case ENot en -> typed(new ENot(inlineExpr(en.getExpr())), en);
+            case ELet el -> typed(new ELet(el.getBinder(), inlineExpr(el.getSubject()),
+                    inlineExpr(el.getContinuation())), el);
+            case ECond ec -> typed(new ECond(inlineExpr(ec.getTest()), inlineExpr(ec.getThenBranch()),
+                    inlineExpr(ec.getElseBranch())), ec);
+            case EFnCall efc -> {
+                List<Expr> args = new ArrayList<>();
+                for (Expr arg : efc.getArgs()) {
+                    args.add(inlineExpr(arg));
+                }
+                FnDef fn = fnDefs.get(efc.getFnSymbol());
+                if (fn != null && canInline(fn, args.size())) {
+                    yield inlineCall(fn, args, efc);
+                }
+                EFnCall call = typed(new EFnCall(efc.getFnName(), args), efc);
+                call.setFnDef(efc.getFnDef());
+                yield call;
+            }
+            case EConcat ec -> {
+                List<Expr> parts = new ArrayList<>();
+                for (Expr part : ec.getExprs()) {
+                    parts.add(inlineExpr(part));
+                }
+                yield typed(new EConcat(parts), ec);
+            }
+            case EPrint ep -> typed(new EPrint(inlineExpr(ep.getExpr())), ep);
+            case ECast ec -> typed(new ECast(inlineExpr(ec.getExpr()), ec.getType()), ec);
+            default -> e;
+        };
+    }
+
+    private boolean canInline(FnDef fn, int argCount) {
+        int size = size(fn.getBody());
+        return !recursive.get(fn.getFnSymbol())
+                && fn.getParams().size() == argCount
+                && size <= MAX_INLINE_SIZE
+                && size <= budget;
+    }
+
+    private Expr inlineCall(FnDef fn, List<Expr> args, EFnCall call) {
+        budget -= size(fn.getBody());
+        Environment<String> renames = new Environment<>();
+        List<String> fresh = new ArrayList<>();
+        for (AnnotatedParam param : fn.getParams()) {
+            // '$' can't occur in a source identifier, so these never clash
+            String name = param.param + "$" + freshNames++;
+            renames = renames.extend(param.symbol, name);
+            fresh.add(name);
+        }
+        // Calls in the copied body may be inlined too; the callee isn't
+        // recursive, so this terminates
+        Expr result = inlineExpr(copy(renames, fn.getBody()));
+        for (int i = args.size() - 1; i >= 0; i--) {
+            result = typed(new ELet(fresh.get(i), args.get(i), result), call);
+        }
+        return result;
+    }
+
+    // A fresh copy of a function body, with its parameters renamed
+    private static Expr copy(Environment<String> renames, Expr e) {
+        return switch (e) {
+            case EVar ev -> typed(new EVar(renames.contains(ev.getSymbol()) ? renames.lookup(ev.getSymbol()) : ev.getVar()), ev);
+            case EBinOp binOp -> typed(new EBinOp(copy(renames, binOp.getE1()), binOp.getOp(),
+                    copy(renames, binOp.getE2())), binOp);
+            case ENot en -> typed(new ENot(copy(renames, en.getExpr())), en);
+            // A let binder shadows a parameter of the same name in its continuation
+            case ELet el -> typed(new ELet(el.getBinder(), copy(renames, el.getSubject()),
+                    copy(renames.extend(el.getBinderSymbol(), el.getBinder()), el.getContinuation())), el);
+            case ECond ec -> typed(new ECond(copy(renames, ec.getTest()), copy(renames, ec.getThenBranch()),
+                    copy(renames, ec.getElseBranch())), ec);
+            case EFnCall efc -> {
+                List<Expr> args = new ArrayList<>();
+                for (Expr arg : efc.getArgs()) {
+                    args.add(copy(renames, arg));
+                }
+                EFnCall call = typed(new EFnCall(efc.getFnName(), args), efc);
+                call.setFnDef(efc.getFnDef());
+                yield call;
+            }
+            case EConcat ec -> {
+                List<Expr> parts = new ArrayList<>();
+                for (Expr part : ec.getExprs()) {
+                    parts.add(copy(renames, part));
+                }
+                yield typed(new EConcat(parts), ec);
+            }
+            case EPrint ep -> typed(new EPrint(copy(renames, ep.getExpr())), ep);
+            case ECast ec -> typed(new ECast(copy(renames, ec.getExpr()), ec.getType()), ec);
+            // Literals and getInput() hold no per-occurrence state and can be shared
+            default -> e;
+        };
+    }
+
+    private static <T extends Expr> T typed(T e, Expr original) {
+        e.setStaticType(original.getStaticType());
+        return e;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * A map from ints to objects, for tables keyed on symbols (see ast.Symbols).
+ * The keys and values are kept in two arrays, probed linearly from the key's
+ * hash, so a lookup neither boxes the key nor follows an entry object. There
+ * is no removal, which no table needs.
+ */
+public class IntMap<V> {
+
+    // Slots hold key + 1, so that 0 marks an empty slot
+    private int[] keys;
+    private Object[] values;
+    // The slot of a key is the top bits of its Fibonacci hash; this many are dropped
+    private int shift;
+    private int size = 0;
+
+    public IntMap() {
+        this(16);
+    }
+
+    public IntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key + 1) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    // Maps key to value, which mustn't be null, replacing any earlier value
+    public void put(int key, V value) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != 0) {
+            if (keys[i] == key + 1) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key + 1;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Symbols are dense, so they are spread over the table by the hash
+    private int slot(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        shift--;
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j] - 1);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
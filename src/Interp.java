@@ -1,168 +1,466 @@
 import ast.*;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class Interp {
-    private Scanner reader = new Scanner(System.in);
+    // Number of function calls made so far; read by Benchmark. Not exact when
+    // operands are evaluated in parallel.
+    private long callCount = 0;
+
+    // Whether to cache the results of pure functions, and the cache of each
+    private final boolean memoize;
+    private Map<FnDef, MemoCache> memo = null;
+
+    // Whether to evaluate independent pure operands in parallel, and the
+    // operators and calls whose operands are worth splitting up
+    private final boolean parallel;
+    private Set<Expr> forkable = null;
+
+    // A worker with more queued tasks than this beyond what other workers
+    // could steal evaluates operands sequentially instead of forking
+    static final int MAX_SURPLUS_TASKS = 2;
 
     public Interp() {
+        this(false, false);
+    }
 
+    public Interp(boolean memoize) {
+        this(memoize, false);
     }
 
-    private boolean unwrapBool(Value v) {
-        if (v instanceof VBool) {
-            return ((VBool) v).getValue();
-        } else {
-            throw new RuntimeException("Runtime type error: Expected a bool but got value " + v);
-        }
+    public Interp(boolean memoize, boolean parallel) {
+        this.memoize = memoize;
+        this.parallel = parallel;
     }
 
-    private int unwrapInt(Value v) {
-        if (v instanceof VInt) {
-            return ((VInt) v).getValue();
-        } else {
-            throw new RuntimeException("Runtime type error: Expected an int but got value " + v);
+    public long getCallCount() {
+        return callCount;
+    }
+
+    // Given a map from function names to function definitions, and the frame of the
+    // function being run, return the value resulting from evaluating expression e.
+    // Variables are read from the frame slots assigned by the Resolver.
+    //
+    // Let continuations, conditional branches and function bodies are evaluated by
+    // going round the loop rather than by recursing, so only genuinely nested
+    // subexpressions use Java stack. In particular a chain of tail calls (as in an
+    // accumulator loop or mutual recursion) runs in constant stack.
+    //
+    // Operands whose type is fixed by their operator (arithmetic, comparisons, the
+    // boolean connectives and conditional tests) go through evalInt and evalBool,
+    // so whole Int and Bool subtrees run on primitives and are only boxed when
+    // their value leaves them. Equality uses the static types recorded by
+    // Typecheck, when it has run, to pick a primitive comparison.
+    public Value interpExpr(IntMap<FnDef> fnDefs, Value[] frame, Expr e) {
+        while (true) {
+            switch (e) {
+                case EInt ei -> {
+                    return ei.asValue();
+                }
+                case EBool eb -> {
+                    return eb.asValue();
+                }
+                case EString es -> {
+                    return es.asValue();
+                }
+                case EUnit ignored -> {
+                    return VUnit.UNIT;
+                }
+                case EVar ev -> {
+                    return frame[ev.getSlot()];
+                }
+                case EBinOp binOp -> {
+                    return switch (binOp.getOp()) {
+                        case ADD, SUB, MUL, DIV, MOD -> VInt.of(evalInt(fnDefs, frame, binOp));
+                        case GT, LT, EQ, AND, OR -> VBool.of(evalBool(fnDefs, frame, binOp));
+                    };
+                }
+                case ENot en -> {
+                    return VBool.of(!evalBool(fnDefs, frame, en.getExpr()));
+                }
+                case ELet el -> {
+                    frame[el.getSlot()] = interpExpr(fnDefs, frame, el.getSubject());
+                    e = el.getContinuation();
+                }
+                case ECond ec -> e = evalBool(fnDefs, frame, ec.getTest())
+                        ? ec.getThenBranch()
+                        : ec.getElseBranch();
+                case EFnCall efc -> {
+                    FnDef fn = lookupFn(fnDefs, efc);
+                    if (memo != null && memo.containsKey(fn)) {
+                        return callMemoized(fnDefs, frame, fn, efc);
+                    }
+                    frame = bindArgs(fnDefs, frame, fn, efc);
+                    e = fn.getBody();
+                }
+                case EConcat ec -> {
+                    VString result = VString.EMPTY;
+                    for (Expr part : ec.getExprs()) {
+                        result = Builtins.concat(result, interpExpr(fnDefs, frame, part));
+                    }
+                    return result;
+                }
+                case EPrint ep -> {
+                    Builtins.print(Builtins.unwrapString(interpExpr(fnDefs, frame, ep.getExpr())));
+                    return VUnit.UNIT;
+                }
+                case EGetInput ignored -> {
+                    return new VString(Builtins.readLine());
+                }
+                case ECast ec -> {
+                    return Builtins.castOrFail(interpExpr(fnDefs, frame, ec.getExpr()), ec.getType());
+                }
+                default -> throw new RuntimeException("Unrecognized expression type: " + e);
+            }
         }
     }
 
-    private String unwrapString(Value v) {
-        if (v instanceof VString) {
-            return ((VString) v).getValue();
-        } else {
-            throw new RuntimeException("Runtime type error: Expected a string but got value " + v);
+    // As interpExpr, for an expression that must evaluate to an Int
+    public int evalInt(IntMap<FnDef> fnDefs, Value[] frame, Expr e) {
+        while (true) {
+            switch (e) {
+                case EInt ei -> {
+                    return ei.getValue();
+                }
+                case EVar ev -> {
+                    return Builtins.unwrapInt(frame[ev.getSlot()]);
+                }
+                case EBinOp binOp -> {
+                    if (forkable != null && forkable.contains(binOp)) {
+                        return Builtins.unwrapInt(evalForked(fnDefs, frame, binOp));
+                    }
+                    switch (binOp.getOp()) {
+                        case ADD -> {
+                            return evalInt(fnDefs, frame, binOp.getE1()) + evalInt(fnDefs, frame, binOp.getE2());
+                        }
+                        case SUB -> {
+                            return evalInt(fnDefs, frame, binOp.getE1()) - evalInt(fnDefs, frame, binOp.getE2());
+                        }
+                        case MUL -> {
+                            return evalInt(fnDefs, frame, binOp.getE1()) * evalInt(fnDefs, frame, binOp.getE2());
+                        }
+                        case DIV -> {
+                            int l = evalInt(fnDefs, frame, binOp.getE1());
+                            int r = evalInt(fnDefs, frame, binOp.getE2());
+                            if (r == 0) throw new RuntimeException("Division by zero");
+                            return l / r;
+                        }
+                        case MOD -> {
+                            int l = evalInt(fnDefs, frame, binOp.getE1());
+                            int r = evalInt(fnDefs, frame, binOp.getE2());
+                            if (r == 0) throw new RuntimeException("Modulo by zero");
+                            return l % r;
+                        }
+                        default -> {
+                            return Builtins.unwrapInt(interpExpr(fnDefs, frame, binOp));
+                        }
+                    }
+                }
+                case ELet el -> {
+                    frame[el.getSlot()] = interpExpr(fnDefs, frame, el.getSubject());
+                    e = el.getContinuation();
+                }
+                case ECond ec -> e = evalBool(fnDefs, frame, ec.getTest())
+                        ? ec.getThenBranch()
+                        : ec.getElseBranch();
+                case EFnCall efc -> {
+                    FnDef fn = lookupFn(fnDefs, efc);
+                    if (memo != null && memo.containsKey(fn)) {
+                        return Builtins.unwrapInt(callMemoized(fnDefs, frame, fn, efc));
+                    }
+                    frame = bindArgs(fnDefs, frame, fn, efc);
+                    e = fn.getBody();
+                }
+                default -> {
+                    return Builtins.unwrapInt(interpExpr(fnDefs, frame, e));
+                }
+            }
         }
     }
 
-    // Given a value and a type, performs a cast (according to the rules in the spec) if possible,
-    // raising a CastException otherwise.
-    private Value cast(Value vFrom, Type ty) throws CastException {
-        return switch (ty) {
-            case TyString ignored -> switch (vFrom) {
-                case VInt vi -> new VString(Integer.toString(vi.getValue()));
-                case VBool vb -> new VString(vb.getValue() ? "true" : "false");
-                case VString vs -> vs;
-                case VUnit ignoredToo -> new VString("()");
-                default -> throw new CastException("Bad cast: " + vFrom + " to String");
-            };
+    // As interpExpr, for an expression that must evaluate to a Bool. The boolean
+    // operators evaluate both operands, as in the other engines.
+    public boolean evalBool(IntMap<FnDef> fnDefs, Value[] frame, Expr e) {
+        while (true) {
+            switch (e) {
+                case EBool eb -> {
+                    return eb.getValue();
+                }
+                case EVar ev -> {
+                    return Builtins.unwrapBool(frame[ev.getSlot()]);
+                }
+                case EBinOp binOp -> {
+                    if (forkable != null && forkable.contains(binOp)) {
+                        return Builtins.unwrapBool(evalForked(fnDefs, frame, binOp));
+                    }
+                    switch (binOp.getOp()) {
+                        case GT -> {
+                            return evalInt(fnDefs, frame, binOp.getE1()) > evalInt(fnDefs, frame, binOp.getE2());
+                        }
+                        case LT -> {
+                            return evalInt(fnDefs, frame, binOp.getE1()) < evalInt(fnDefs, frame, binOp.getE2());
+                        }
+                        case EQ -> {
+                            Type operandType = binOp.getE1().getStaticType();
+                            if (operandType == TyInt.type()) {
+                                return evalInt(fnDefs, frame, binOp.getE1()) == evalInt(fnDefs, frame, binOp.getE2());
+                            }
+                            if (operandType == TyBool.type()) {
+                                return evalBool(fnDefs, frame, binOp.getE1()) == evalBool(fnDefs, frame, binOp.getE2());
+                            }
+                            Value l = interpExpr(fnDefs, frame, binOp.getE1());
+                            Value r = interpExpr(fnDefs, frame, binOp.getE2());
+                            if (l instanceof VInt li && r instanceof VInt ri) {
+                                return li.getValue() == ri.getValue();
+                            }
+                            return l == r || l.equals(r);
+                        }
+                        case AND -> {
+                            return evalBool(fnDefs, frame, binOp.getE1()) & evalBool(fnDefs, frame, binOp.getE2());
+                        }
+                        case OR -> {
+                            return evalBool(fnDefs, frame, binOp.getE1()) | evalBool(fnDefs, frame, binOp.getE2());
+                        }
+                        default -> {
+                            return Builtins.unwrapBool(interpExpr(fnDefs, frame, binOp));
+                        }
+                    }
+                }
+                case ENot en -> {
+                    return !evalBool(fnDefs, frame, en.getExpr());
+                }
+                case ELet el -> {
+                    frame[el.getSlot()] = interpExpr(fnDefs, frame, el.getSubject());
+                    e = el.getContinuation();
+                }
+                case ECond ec -> e = evalBool(fnDefs, frame, ec.getTest())
+                        ? ec.getThenBranch()
+                        : ec.getElseBranch();
+                case EFnCall efc -> {
+                    FnDef fn = lookupFn(fnDefs, efc);
+                    if (memo != null && memo.containsKey(fn)) {
+                        return Builtins.unwrapBool(callMemoized(fnDefs, frame, fn, efc));
+                    }
+                    frame = bindArgs(fnDefs, frame, fn, efc);
+                    e = fn.getBody();
+                }
+                default -> {
+                    return Builtins.unwrapBool(interpExpr(fnDefs, frame, e));
+                }
+            }
+        }
+    }
 
-            case TyInt ignored -> switch (vFrom) {
-                case VString vs when vs.getValue().matches("-?\\d+") -> new VInt(Integer.parseInt(vs.getValue()));
-                case VBool vb -> new VInt(vb.getValue() ? 1 : 0);
-                case VInt vi -> vi;
-                default -> throw new CastException("Bad cast: " + vFrom + " to Int");
-            };
+    // Uses the definition recorded by Typecheck, falling back to the function map
+    // when the program was run without typechecking
+    private static FnDef lookupFn(IntMap<FnDef> fnDefs, EFnCall efc) {
+        FnDef fn = efc.getFnDef();
+        if (fn != null) {
+            return fn;
+        }
+        fn = fnDefs.get(efc.getFnSymbol());
+        if (fn == null) throw new RuntimeException("Function not defined: " + efc.getFnName());
+        return fn;
+    }
 
-            case TyUnit ignored -> switch (vFrom) {
-                case VUnit vu -> vu;
-                default -> throw new CastException("Bad cast: " + vFrom + " to Unit");
-            };
+    // Evaluates the arguments of a call into a fresh frame for the callee, where
+    // parameters occupy the first slots
+    private Value[] bindArgs(IntMap<FnDef> fnDefs, Value[] frame, FnDef fn, EFnCall efc) {
+        callCount++;
+        Value[] newFrame = new Value[fn.getFrameSize()];
+        List<Expr> args = efc.getArgs();
+        if (forkable != null && forkable.contains(efc)) {
+            Value[] values = evalOperands(fnDefs, frame, args);
+            System.arraycopy(values, 0, newFrame, 0, values.length);
+            return newFrame;
+        }
+        for (int i = 0; i < args.size(); i++) {
+            newFrame[i] = interpExpr(fnDefs, frame, args.get(i));
+        }
+        return newFrame;
+    }
 
-            case TyBool ignored -> switch (vFrom) {
-                case VBool vb -> vb;
-                case VString vs when vs.getValue().equals("true") -> new VBool(true);
-                case VString vs when vs.getValue().equals("false") -> new VBool(false);
-                default -> throw new CastException("Invalid cast from " + vFrom + " to Bool");
-            };
+    private Value evalForked(IntMap<FnDef> fnDefs, Value[] frame, EBinOp binOp) {
+        Value[] values = evalOperands(fnDefs, frame, List.of(binOp.getE1(), binOp.getE2()));
+        return Builtins.evalBinOp(binOp.getOp(), values[0], values[1]);
+    }
 
-            default -> throw new CastException("Bad cast: " + vFrom + " to " + ty);
-        };
+    // Evaluates pure operands, the first on this thread and the others as
+    // fork-join tasks. Each task works on its own copy of the frame, since lets
+    // in sibling operands may be given the same slot. When this worker already
+    // has enough queued work the operands are evaluated in order instead, which
+    // keeps small subexpressions deep in a recursion from being split.
+    private Value[] evalOperands(IntMap<FnDef> fnDefs, Value[] frame, List<Expr> operands) {
+        Value[] values = new Value[operands.size()];
+        if (ForkJoinTask.getSurplusQueuedTaskCount() > MAX_SURPLUS_TASKS) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = interpExpr(fnDefs, frame, operands.get(i));
+            }
+            return values;
+        }
+        List<EvalTask> tasks = new ArrayList<>();
+        for (int i = 1; i < values.length; i++) {
+            EvalTask task = new EvalTask(fnDefs, frame.clone(), operands.get(i));
+            task.fork();
+            tasks.add(task);
+        }
+        values[0] = interpExpr(fnDefs, frame, operands.get(0));
+        for (int i = 1; i < values.length; i++) {
+            values[i] = tasks.get(i - 1).result();
+        }
+        return values;
     }
 
-    // Given a map from function names to function definitions, and a value environment,
-    // return the value resulting from evaluating expression e
-    public Value interpExpr(Map<String, FnDef> fnDefs, Environment<Value> valEnv, Expr e) {
-        return switch (e) {
-            case EInt ei -> new VInt(ei.getValue());
-            case EBool eb -> new VBool(eb.getValue());
-            case EString es -> new VString(es.getValue());
-            case EUnit ignored -> new VUnit();
-            case EVar ev -> valEnv.lookup(ev.getVar());
+    // Evaluates an expression on a pool thread. A failure is kept and rethrown
+    // as is by result(), rather than wrapped the way ForkJoinTask.join does
+    // across threads, so errors read the same as in sequential runs. Tasks are
+    // never serialized.
+    @SuppressWarnings("serial")
+    private final class EvalTask extends RecursiveTask<Value> {
+        private final IntMap<FnDef> fnDefs;
+        private final Value[] frame;
+        private final Expr e;
+        private Throwable failure = null;
 
-            case EBinOp binOp -> evalBinOp(binOp.getOp(),
-                    interpExpr(fnDefs, valEnv, binOp.getE1()),
-                    interpExpr(fnDefs, valEnv, binOp.getE2()));
+        EvalTask(IntMap<FnDef> fnDefs, Value[] frame, Expr e) {
+            this.fnDefs = fnDefs;
+            this.frame = frame;
+            this.e = e;
+        }
 
-            case ENot en -> new VBool(!unwrapBool(interpExpr(fnDefs, valEnv, en.getExpr())));
-            case ELet el -> {
-                Value boundVal = interpExpr(fnDefs, valEnv, el.getSubject());
-                yield interpExpr(fnDefs, valEnv.extend(el.getBinder(), boundVal), el.getContinuation());
+        @Override
+        protected Value compute() {
+            try {
+                return interpExpr(fnDefs, frame, e);
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+                return null;
             }
-            case ECond ec -> unwrapBool(interpExpr(fnDefs, valEnv, ec.getTest()))
-                    ? interpExpr(fnDefs, valEnv, ec.getThenBranch())
-                    : interpExpr(fnDefs, valEnv, ec.getElseBranch());
-            case EFnCall efc -> {
-                FnDef fn = fnDefs.get(efc.getFnName());
-                if (fn == null) throw new RuntimeException("Function not defined: " + efc.getFnName());
-                List<Value> argValues = efc.getArgs().stream()
-                        .map(arg -> interpExpr(fnDefs, valEnv, arg))
-                        .toList();
-                Environment<Value> newEnv = valEnv;
-                for (int i = 0; i < fn.getParams().size(); i++) {
-                    newEnv = newEnv.extend(fn.getParams().get(i).param, argValues.get(i));
-                }
-                yield interpExpr(fnDefs, newEnv, fn.getBody());
+        }
+
+        Value result() {
+            Value v = join();
+            if (failure instanceof RuntimeException ex) {
+                throw ex;
             }
-            case EConcat ec -> {
-                String result = ec.getExprs().stream()
-                        .map(arg -> unwrapString(interpExpr(fnDefs, valEnv, arg)))
-                        .collect(Collectors.joining());
-                yield new VString(result);
+            if (failure != null) {
+                throw (Error) failure;
             }
-            case EPrint ep -> {
-                System.out.println(unwrapString(interpExpr(fnDefs, valEnv, ep.getExpr())));
-                yield new VUnit();
+            return v;
+        }
+    }
+
+    // Marks the operators and calls in e whose operands are all pure and of
+    // which at least two make calls; operands without calls are too cheap to
+    // be worth a task
+    private void findForkable(Expr e, BitSet pureNames) {
+        List<Expr> operands = switch (e) {
+            case EBinOp binOp -> List.of(binOp.getE1(), binOp.getE2());
+            case EFnCall efc -> efc.getArgs();
+            default -> List.of();
+        };
+        if (operands.size() >= 2
+                && operands.stream().allMatch(operand -> Purity.isPure(operand, pureNames))
+                && operands.stream().filter(Purity::hasCalls).count() >= 2) {
+            forkable.add(e);
+        }
+        switch (e) {
+            case EBinOp binOp -> {
+                findForkable(binOp.getE1(), pureNames);
+                findForkable(binOp.getE2(), pureNames);
             }
-            case EGetInput ignored -> new VString(reader.nextLine());
-            case ECast ec -> {
-                Value val = interpExpr(fnDefs, valEnv, ec.getExpr());
-                try {
-                    yield cast(val, ec.getType());
-                } catch (CastException ex) {
-                    throw new RuntimeException("Invalid cast: " + ex.getMessage());
-                }
+            case ENot en -> findForkable(en.getExpr(), pureNames);
+            case ELet el -> {
+                findForkable(el.getSubject(), pureNames);
+                findForkable(el.getContinuation(), pureNames);
             }
-            default -> throw new RuntimeException("Unrecognized expression type: " + e);
-        };
+            case ECond ec -> {
+                findForkable(ec.getTest(), pureNames);
+                findForkable(ec.getThenBranch(), pureNames);
+                findForkable(ec.getElseBranch(), pureNames);
+            }
+            case EFnCall efc -> efc.getArgs().forEach(arg -> findForkable(arg, pureNames));
+            case EConcat ec -> ec.getExprs().forEach(part -> findForkable(part, pureNames));
+            case EPrint ep -> findForkable(ep.getExpr(), pureNames);
+            case ECast ec -> findForkable(ec.getExpr(), pureNames);
+            default -> {
+            }
+        }
     }
 
-    private Value evalBinOp(EBinOp.Op op, Value left, Value right) {
-        return switch (op) {
-            case ADD -> new VInt(unwrapInt(left) + unwrapInt(right));
-            case SUB -> new VInt(unwrapInt(left) - unwrapInt(right));
-            case MUL -> new VInt(unwrapInt(left) * unwrapInt(right));
-            case DIV -> {
-                int r = unwrapInt(right);
-                if (r == 0) throw new RuntimeException("Division by zero");
-                yield new VInt(unwrapInt(left) / r);
-            }
-            case MOD -> {
-                int r = unwrapInt(right);
-                if (r == 0) throw new RuntimeException("Modulo by zero");
-                yield new VInt(unwrapInt(left) % r);
+    // Calls a memoized function. The arguments are evaluated as for any call,
+    // but the body only runs if the cache has no result for them; the call
+    // isn't a tail call, since its result has to be stored.
+    private Value callMemoized(IntMap<FnDef> fnDefs, Value[] frame, FnDef fn, EFnCall efc) {
+        Value[] newFrame = bindArgs(fnDefs, frame, fn, efc);
+        MemoCache cache = memo.get(fn);
+        Value result = cache.lookup(newFrame);
+        if (result == null) {
+            result = interpExpr(fnDefs, newFrame, fn.getBody());
+            cache.store(newFrame, result);
+        }
+        return result;
+    }
+
+    // Prints the hit rate of each memoized function to stderr
+    public void printMemoStats() {
+        if (memo != null) {
+            for (MemoCache cache : memo.values()) {
+                System.err.println("Memo " + cache.stats());
             }
-            case GT  -> new VBool(unwrapInt(left) > unwrapInt(right));
-            case LT  -> new VBool(unwrapInt(left) < unwrapInt(right));
-            case EQ  -> new VBool(left.equals(right)); // Works for all types
-            case AND -> new VBool(unwrapBool(left) && unwrapBool(right));
-            case OR  -> new VBool(unwrapBool(left) || unwrapBool(right));
-        };
+        }
     }
 
     // Runs a program by constructing a map from function names to function definitions,
-    // and evaluating the main expression under an empty value environment
+    // and evaluating the main expression in a fresh frame. The program must already
+    // have been through the Resolver.
     public Value interpProgram(Program prog) {
         // Step 1: Construct a mapping from function names to function definitions
-        Map<String, FnDef> functionMap = new HashMap<>();
+        IntMap<FnDef> functionMap = new IntMap<>(prog.getFunctionDefs().size());
         for (FnDef fn : prog.getFunctionDefs()) {
-            functionMap.put(fn.getFnName(), fn);
+            functionMap.put(fn.getFnSymbol(), fn);
+        }
+        if (memoize) {
+            memo = new LinkedHashMap<>();
+            Set<FnDef> pure = Purity.pureFunctions(prog);
+            for (FnDef fn : prog.getFunctionDefs()) {
+                if (pure.contains(fn)) {
+                    memo.put(fn, MemoCache.forFunction(fn));
+                }
+            }
         }
 
-        // Step 2: Evaluate the main expression under an empty environment
-        return interpExpr(functionMap, new Environment<>(), prog.getMainExpr());
+        if (parallel) {
+            BitSet pureNames = new BitSet();
+            for (FnDef fn : Purity.pureFunctions(prog)) {
+                pureNames.set(fn.getFnSymbol());
+            }
+            forkable = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (FnDef fn : prog.getFunctionDefs()) {
+                findForkable(fn.getBody(), pureNames);
+            }
+            findForkable(prog.getMainExpr(), pureNames);
+        }
+
+        // Step 2: Evaluate the main expression in a fresh frame, on a pool
+        // thread if operands may be forked
+        Value[] frame = new Value[prog.getMainFrameSize()];
+        if (parallel) {
+            EvalTask task = new EvalTask(functionMap, frame, prog.getMainExpr());
+            ForkJoinPool.commonPool().execute(task);
+            return task.result();
+        }
+        return interpExpr(functionMap, frame, prog.getMainExpr());
     }
 
 }
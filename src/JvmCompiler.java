@@ -0,0 +1,363 @@
+import ast.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/*
+ * JVM backend. Every FnDef becomes a static method of one generated class,
+ * taking and returning unboxed values according to its declared types: Int is
+ * int, Bool is boolean, String is java.lang.String and Unit is the ast.VUnit
+ * singleton. The main expression becomes a no-argument method. Resolver slots
+ * are used directly as JVM local variable indices, since every representation
+ * takes one slot.
+ *
+ * Code generation follows the static types recorded by Typecheck, so programs
+ * are typechecked first even when Main was run with -interp. The class is
+ * loaded as a hidden class and from then on HotSpot compiles it like any
+ * other Java code.
+ */
+public class JvmCompiler {
+
+    private static final String CLASS_NAME = "DigglebyProgram";
+    private static final String RUNTIME = "JvmRuntime";
+    private static final String BUILTINS = "Builtins";
+    // Not a valid Diggleby identifier, so it can't clash with a function name
+    private static final String MAIN_METHOD = "$main";
+
+    private static final String STRING = "Ljava/lang/String;";
+    private static final String VALUE = "Last/Value;";
+    private static final String UNIT = "Last/VUnit;";
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD = 0x19;
+    private static final int ISTORE = 0x36;
+    private static final int ASTORE = 0x3a;
+    private static final int POP = 0x57;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int IFEQ = 0x99;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int IF_ACMPNE = 0xa6;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int ARETURN = 0xb0;
+    private static final int GETSTATIC = 0xb2;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb;
+    private static final int WIDE = 0xc4;
+
+    private final ClassFileWriter cw = new ClassFileWriter(CLASS_NAME);
+
+    // The method being generated and its operand stack depth
+    private ClassFileWriter.Method mv;
+    private int stack;
+    private int maxStack;
+
+    // Generates the class file for a resolved program. Code generation reads the
+    // static types and called definitions that Typecheck records on the AST, so
+    // the program is typechecked here even if Main skipped it.
+    public byte[] compileProgram(Program prog) {
+        (new Typecheck()).typecheckProgram(prog);
+        IntMap<FnDef> functionMap = Typecheck.functionMap(prog);
+        for (FnDef fn : prog.getFunctionDefs()) {
+            // A def redefined later under the same name is never called, and
+            // could clash with the later one's method
+            if (functionMap.get(fn.getFnSymbol()) != fn) {
+                continue;
+            }
+            compileMethod(fn.getFnName(), methodDescriptor(fn), fn.getFrameSize(), fn.getBody());
+        }
+        compileMethod(MAIN_METHOD, "()" + descriptor(prog.getMainExpr().getStaticType()),
+                prog.getMainFrameSize(), prog.getMainExpr());
+        return cw.toByteArray();
+    }
+
+    // Compiles, loads and runs a program that has already been through the Resolver
+    public Value runProgram(Program prog) {
+        byte[] classFile = compileProgram(prog);
+        Object result;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            MethodHandle main = lookup.findStatic(lookup.lookupClass(), MAIN_METHOD,
+                    MethodType.methodType(javaClass(prog.getMainExpr().getStaticType())));
+            result = main.invoke();
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+        return switch (result) {
+            case Integer n -> VInt.of(n);
+            case Boolean b -> VBool.of(b);
+            case String s -> new VString(s);
+            default -> (Value) result;
+        };
+    }
+
+    private void compileMethod(String name, String descriptor, int frameSize, Expr body) {
+        mv = cw.addStaticMethod(name, descriptor);
+        stack = 0;
+        maxStack = 0;
+        compileExpr(body);
+        op(isPrimitive(body.getStaticType()) ? IRETURN : ARETURN, -1);
+        mv.setMaxs(maxStack, frameSize);
+    }
+
+    // Emits code leaving the value of e on the operand stack, in the
+    // representation of its static type
+    private void compileExpr(Expr e) {
+        switch (e) {
+            case EInt ei -> pushInt(ei.getValue());
+            case EBool eb -> op(eb.getValue() ? ICONST_1 : ICONST_0, 1);
+            case EString es -> ldc(cw.string(es.getValue()));
+            case EUnit ignored -> pushUnit();
+            case EVar ev -> {
+                local(isPrimitive(ev.getStaticType()) ? ILOAD : ALOAD, ev.getSlot());
+                adjust(1);
+            }
+            case EBinOp binOp -> {
+                compileExpr(binOp.getE1());
+                compileExpr(binOp.getE2());
+                switch (binOp.getOp()) {
+                    case ADD -> op(IADD, -1);
+                    case SUB -> op(ISUB, -1);
+                    case MUL -> op(IMUL, -1);
+                    case DIV -> invokeStatic(RUNTIME, "div", "(II)I", -1);
+                    case MOD -> invokeStatic(RUNTIME, "mod", "(II)I", -1);
+                    case GT -> compare(IF_ICMPLE);
+                    case LT -> compare(IF_ICMPGE);
+                    case EQ -> {
+                        switch (binOp.getE1().getStaticType()) {
+                            case TyString ignored ->
+                                    invoke(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", -1);
+                            case TyUnit ignored -> compare(IF_ACMPNE);
+                            default -> compare(IF_ICMPNE);
+                        }
+                    }
+                    // Both operands are always evaluated, so these need no branches
+                    case AND -> op(IAND, -1);
+                    case OR -> op(IOR, -1);
+                }
+            }
+            case ENot en -> {
+                compileExpr(en.getExpr());
+                op(ICONST_1, 1);
+                op(IXOR, -1);
+            }
+            case ELet el -> {
+                compileExpr(el.getSubject());
+                local(isPrimitive(el.getSubject().getStaticType()) ? ISTORE : ASTORE, el.getSlot());
+                adjust(-1);
+                compileExpr(el.getContinuation());
+            }
+            case ECond ec -> {
+                compileExpr(ec.getTest());
+                int toElse = jump(IFEQ, -1);
+                compileExpr(ec.getThenBranch());
+                int toEnd = jump(GOTO, 0);
+                // The else branch starts from the stack as it was before the then branch
+                adjust(-1);
+                mv.patch(toElse);
+                compileExpr(ec.getElseBranch());
+                mv.patch(toEnd);
+            }
+            case EFnCall efc -> {
+                FnDef fn = efc.getFnDef();
+                List<Expr> args = efc.getArgs();
+                for (Expr arg : args) {
+                    compileExpr(arg);
+                }
+                invokeStatic(CLASS_NAME, fn.getFnName(), methodDescriptor(fn), 1 - args.size());
+            }
+            case EConcat ec -> {
+                op2(NEW, cw.classRef("java/lang/StringBuilder"), 1);
+                op(DUP, 1);
+                invoke(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V", -1);
+                for (Expr part : ec.getExprs()) {
+                    compileExpr(part);
+                    invoke(INVOKEVIRTUAL, "java/lang/StringBuilder", "append",
+                            "(" + STRING + ")Ljava/lang/StringBuilder;", -1);
+                }
+                invoke(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()" + STRING, 0);
+            }
+            case EPrint ep -> {
+                compileExpr(ep.getExpr());
+                invokeStatic(BUILTINS, "print", "(" + STRING + ")V", -1);
+                pushUnit();
+            }
+            case EGetInput ignored -> invokeStatic(BUILTINS, "readLine", "()" + STRING, 1);
+            case ECast ec -> {
+                compileExpr(ec.getExpr());
+                cast(ec.getExpr().getStaticType(), ec.getType());
+            }
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        }
+    }
+
+    private void cast(Type from, Type to) {
+        if (from == to) {
+            return;
+        }
+        switch (to) {
+            case TyString ignored when from == TyInt.type() ->
+                    invokeStatic("java/lang/Integer", "toString", "(I)" + STRING, 0);
+            case TyString ignored when from == TyBool.type() ->
+                    invokeStatic("java/lang/String", "valueOf", "(Z)" + STRING, 0);
+            case TyString ignored when from == TyUnit.type() -> {
+                op(POP, -1);
+                ldc(cw.string("()"));
+            }
+            // A boolean already is the int 0 or 1
+            case TyInt ignored when from == TyBool.type() -> { }
+            case TyInt ignored when from == TyString.type() ->
+                    invokeStatic(RUNTIME, "toInt", "(" + STRING + ")I", 0);
+            default -> {
+                // Rare or always-failing casts: box, cast as the interpreter does, unbox
+                if (from != TyUnit.type()) {
+                    invokeStatic(RUNTIME, "box", "(" + descriptor(from) + ")" + VALUE, 0);
+                }
+                pushInt(castIndex(to));
+                invokeStatic(RUNTIME, "cast", "(" + VALUE + "I)" + VALUE, -1);
+                String unbox = switch (to) {
+                    case TyInt ignored -> "unboxInt";
+                    case TyBool ignored -> "unboxBool";
+                    case TyString ignored -> "unboxString";
+                    default -> "unboxUnit";
+                };
+                invokeStatic(RUNTIME, unbox, "(" + VALUE + ")" + descriptor(to), 0);
+            }
+        }
+    }
+
+    private static int castIndex(Type ty) {
+        for (int i = 0; i < BytecodeProgram.CAST_TYPES.length; i++) {
+            if (BytecodeProgram.CAST_TYPES[i] == ty) {
+                return i;
+            }
+        }
+        throw new RuntimeException("Unknown cast type: " + ty);
+    }
+
+    // Turns a two-operand comparison branch into a boolean 0 or 1; the branch
+    // is taken when the result is false
+    private void compare(int falseBranch) {
+        int toFalse = jump(falseBranch, -2);
+        op(ICONST_1, 1);
+        int toEnd = jump(GOTO, 0);
+        adjust(-1);
+        mv.patch(toFalse);
+        op(ICONST_0, 1);
+        mv.patch(toEnd);
+    }
+
+    private void pushUnit() {
+        op2(GETSTATIC, cw.fieldRef("ast/VUnit", "UNIT", UNIT), 1);
+    }
+
+    private void pushInt(int n) {
+        if (n >= -1 && n <= 5) {
+            op(ICONST_0 + n, 1);
+        } else if (n >= Byte.MIN_VALUE && n <= Byte.MAX_VALUE) {
+            mv.op1(BIPUSH, n);
+            adjust(1);
+        } else if (n >= Short.MIN_VALUE && n <= Short.MAX_VALUE) {
+            op2(SIPUSH, n, 1);
+        } else {
+            ldc(cw.integer(n));
+        }
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            mv.op1(LDC, index);
+        } else {
+            mv.op2(LDC_W, index);
+        }
+        adjust(1);
+    }
+
+    private void local(int opcode, int slot) {
+        if (slot < 256) {
+            mv.op1(opcode, slot);
+        } else {
+            mv.op(WIDE);
+            mv.op2(opcode, slot);
+        }
+    }
+
+    private void invokeStatic(String owner, String name, String descriptor, int stackEffect) {
+        invoke(INVOKESTATIC, owner, name, descriptor, stackEffect);
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor, int stackEffect) {
+        op2(opcode, cw.methodRef(owner, name, descriptor), stackEffect);
+    }
+
+    private int jump(int opcode, int stackEffect) {
+        adjust(stackEffect);
+        return mv.jump(opcode);
+    }
+
+    private void op(int opcode, int stackEffect) {
+        mv.op(opcode);
+        adjust(stackEffect);
+    }
+
+    private void op2(int opcode, int operand, int stackEffect) {
+        mv.op2(opcode, operand);
+        adjust(stackEffect);
+    }
+
+    private void adjust(int stackEffect) {
+        stack += stackEffect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private static String methodDescriptor(FnDef fn) {
+        StringBuilder sb = new StringBuilder("(");
+        for (AnnotatedParam param : fn.getParams()) {
+            sb.append(descriptor(param.type));
+        }
+        return sb.append(')').append(descriptor(fn.getReturnType())).toString();
+    }
+
+    private static String descriptor(Type ty) {
+        return switch (ty) {
+            case TyInt ignored -> "I";
+            case TyBool ignored -> "Z";
+            case TyString ignored -> STRING;
+            case TyUnit ignored -> UNIT;
+            default -> throw new RuntimeException("Unknown type: " + ty);
+        };
+    }
+
+    private static Class<?> javaClass(Type ty) {
+        return switch (ty) {
+            case TyInt ignored -> int.class;
+            case TyBool ignored -> boolean.class;
+            case TyString ignored -> String.class;
+            default -> VUnit.class;
+        };
+    }
+
+    private static boolean isPrimitive(Type ty) {
+        return ty == TyInt.type() || ty == TyBool.type();
+    }
+}
@@ -0,0 +1,60 @@
+import ast.*;
+
+/*
+ * Static helpers called from the classes generated by JvmCompiler, for the
+ * operations that don't map onto a single JVM instruction. They must stay
+ * public: generated classes live in this package but are separate hidden
+ * classes.
+ */
+public final class JvmRuntime {
+
+    private JvmRuntime() {
+    }
+
+    public static int div(int left, int right) {
+        if (right == 0) throw new RuntimeException("Division by zero");
+        return left / right;
+    }
+
+    public static int mod(int left, int right) {
+        if (right == 0) throw new RuntimeException("Modulo by zero");
+        return left % right;
+    }
+
+    public static int toInt(String s) {
+        return Builtins.unwrapInt(Builtins.castOrFail(new VString(s), TyInt.type()));
+    }
+
+    // The remaining casts go through the boxed representation and Builtins.cast
+    public static Value cast(Value v, int castType) {
+        return Builtins.castOrFail(v, BytecodeProgram.CAST_TYPES[castType]);
+    }
+
+    public static Value box(int n) {
+        return VInt.of(n);
+    }
+
+    public static Value box(boolean b) {
+        return VBool.of(b);
+    }
+
+    public static Value box(String s) {
+        return new VString(s);
+    }
+
+    public static int unboxInt(Value v) {
+        return Builtins.unwrapInt(v);
+    }
+
+    public static boolean unboxBool(Value v) {
+        return Builtins.unwrapBool(v);
+    }
+
+    public static String unboxString(Value v) {
+        return Builtins.unwrapString(v);
+    }
+
+    public static VUnit unboxUnit(Value v) {
+        return (VUnit) v;
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads lines of UTF-8 text for getInput(), as Scanner.nextLine did but
+ * without its regular expressions. Bytes are scanned for the end of the line
+ * in a large buffer, and a line that is all ASCII (the common case) is turned
+ * into a String without going through the UTF-8 decoder. Lines end at "\n",
+ * "\r\n" or "\r"; reading past the last line throws NoSuchElementException,
+ * like Scanner.
+ *
+ * When stdin is a regular file it is memory-mapped, a window at a time, and
+ * lines are read straight out of the mapping; otherwise (a pipe or terminal)
+ * it is read into a heap buffer.
+ */
+public class LineReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_WINDOW = 1L << 28;
+
+    // Exactly one of these is the source: a stream read into a heap buffer,
+    // or a file mapped from mappedEnd up to fileSize
+    private final InputStream in;
+    private final FileChannel channel;
+    private long mappedEnd;
+    private final long fileSize;
+
+    // The unread bytes are those between the buffer's position and limit.
+    // array is the buffer's backing array, or null for a mapping.
+    private ByteBuffer buffer;
+    private byte[] array;
+
+    // Holds a line that runs past the end of the buffer, and copies of lines
+    // out of a mapping
+    private byte[] line = new byte[256];
+
+    // Set after a line ending in '\r', so a '\n' straight after is skipped
+    private boolean skipLF = false;
+
+    public LineReader(InputStream in) {
+        this.in = in;
+        this.channel = null;
+        this.fileSize = 0;
+        this.array = new byte[BUFFER_SIZE];
+        this.buffer = ByteBuffer.wrap(array, 0, 0);
+    }
+
+    private LineReader(FileChannel channel, long start, long size) {
+        this.in = null;
+        this.channel = channel;
+        this.mappedEnd = start;
+        this.fileSize = size;
+        this.array = null;
+        this.buffer = ByteBuffer.allocate(0);
+    }
+
+    // A reader for stdin, mapped if it is a regular file. A pipe or terminal
+    // reports no size (or can't report a position), so it is read as a stream.
+    public static LineReader forStdin() {
+        FileInputStream stdin = new FileInputStream(FileDescriptor.in);
+        try {
+            FileChannel channel = stdin.getChannel();
+            long position = channel.position();
+            long size = channel.size();
+            if (size > position) {
+                return new LineReader(channel, position, size);
+            }
+        } catch (IOException ex) {
+            // Not seekable, so not a regular file
+        }
+        return new LineReader(stdin);
+    }
+
+    public String readLine() {
+        int length = 0;
+        boolean found = false;
+        while (true) {
+            if (!buffer.hasRemaining() && !fill()) {
+                if (!found) {
+                    throw new NoSuchElementException("No line found");
+                }
+                return decode(line, 0, length);
+            }
+            int start = buffer.position();
+            int end = buffer.limit();
+            if (skipLF) {
+                skipLF = false;
+                if (byteAt(start) == '\n') {
+                    buffer.position(start + 1);
+                    continue;
+                }
+            }
+            found = true;
+            int i = indexOfLineEnd(start, end);
+            if (i < end) {
+                skipLF = byteAt(i) == '\r';
+                buffer.position(i + 1);
+                if (length == 0) {
+                    // The whole line is in the buffer
+                    return decode(start, i - start);
+                }
+                length = append(start, i, length);
+                return decode(line, 0, length);
+            }
+            length = append(start, end, length);
+            buffer.position(end);
+        }
+    }
+
+    private byte byteAt(int i) {
+        return array != null ? array[i] : buffer.get(i);
+    }
+
+    private int indexOfLineEnd(int from, int to) {
+        if (array != null) {
+            byte[] a = array;
+            for (int i = from; i < to; i++) {
+                byte b = a[i];
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+        }
+        return to;
+    }
+
+    // Appends the buffer's bytes from start to end to line, which holds length
+    // bytes, and returns the new length
+    private int append(int start, int end, int length) {
+        int count = end - start;
+        if (length + count > line.length) {
+            byte[] bigger = new byte[Math.max(line.length * 2, length + count)];
+            System.arraycopy(line, 0, bigger, 0, length);
+            line = bigger;
+        }
+        buffer.get(start, line, length, count);
+        return length + count;
+    }
+
+    private String decode(int start, int count) {
+        if (array != null) {
+            return decode(array, start, count);
+        }
+        return decode(line, 0, append(start, start + count, 0));
+    }
+
+    private static String decode(byte[] bytes, int start, int count) {
+        for (int i = start; i < start + count; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, start, count, StandardCharsets.UTF_8);
+            }
+        }
+        // ASCII is a subset of Latin-1, whose bytes are copied as they are
+        return new String(bytes, start, count, StandardCharsets.ISO_8859_1);
+    }
+
+    // Makes more bytes available, returning false at the end of the input
+    private boolean fill() {
+        try {
+            if (in != null) {
+                int n = in.read(array);
+                if (n <= 0) {
+                    return false;
+                }
+                buffer = ByteBuffer.wrap(array, 0, n);
+                return true;
+            }
+            if (mappedEnd >= fileSize) {
+                return false;
+            }
+            long size = Math.min(MAP_WINDOW, fileSize - mappedEnd);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, mappedEnd, size);
+            mappedEnd += size;
+            return true;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -1,51 +1,260 @@
-import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.*;
 import ast.*;
-import antlr.*;
-
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
 
 public class Main {
 
-    private static Program loadAndParse(String path) throws Exception {
-        String code = Files.readString(Paths.get(path));
-        CharStream input = CharStreams.fromString(code);
-        DigglebyLexer lexer = new DigglebyLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        DigglebyParser parser = new DigglebyParser(tokens);
-        ParseTree tree = parser.prog();
-        //System.out.println(tree.toStringTree(parser));
-        return new DigglebyASTGeneratorVisitor().visitProgram(tree);
+    // Highest level accepted by -O<n>; level 0 runs the program as written
+    static final int MAX_OPT_LEVEL = 2;
+
+    static final List<String> ENGINES = List.of("tree", "closure", "specializing", "vm", "regvm", "jvm", "heap");
+
+    // The hand-written parser is the default; ANTLR is the reference it is
+    // checked against, and diff parses with both and fails if they disagree.
+    // parallel splits the source at its defs, and parses and typechecks them
+    // in parallel. Only the antlr front end recovers from syntax errors; the
+    // others stop at the first one (all of them skip unrecognized text).
+    static final List<String> FRONTENDS = List.of("handwritten", "antlr", "diff", "parallel");
+
+    static Program loadAndParse(String path) throws Exception {
+        return loadAndParse(path, FRONTENDS.get(0));
+    }
+
+    static Program loadAndParse(String path, String frontend) throws Exception {
+        return parse(Files.readString(Paths.get(path)), frontend);
+    }
+
+    static Program parse(String code, String frontend) {
+        return switch (frontend) {
+            case "handwritten" -> new RecursiveDescentParser(code).parseProgram();
+            case "antlr" -> AntlrFrontEnd.parse(code);
+            case "diff" -> parseWithBoth(code);
+            case "parallel" -> ParallelFrontEnd.parse(code);
+            default -> throw new IllegalArgumentException("Unknown front end: " + frontend);
+        };
+    }
+
+    private static Program parseWithBoth(String code) {
+        Program reference = AntlrFrontEnd.parse(code);
+        Program prog = new RecursiveDescentParser(code).parseProgram();
+        String expected = AstDump.of(reference);
+        String actual = AstDump.of(prog);
+        if (!expected.equals(actual)) {
+            throw new RuntimeException("Front ends disagree\nantlr:\n" + expected + "\nhandwritten:\n" + actual);
+        }
+        return prog;
+    }
+
+    // Returns the typechecked program from the .digc cache, or parses and
+    // typechecks it and adds it to the cache
+    private static Program loadTypechecked(Path path, String frontend, Path cacheDir) throws Exception {
+        byte[] source = Files.readAllBytes(path);
+        ProgramCache cache = new ProgramCache(path, source, cacheDir);
+        Program prog = cache.load();
+        if (prog == null) {
+            prog = typecheck(parse(new String(source, StandardCharsets.UTF_8), frontend), frontend);
+            cache.store(prog);
+        }
+        return prog;
+    }
+
+    private static Program typecheck(Program prog, String frontend) {
+        Typecheck checker = new Typecheck();
+        return frontend.equals("parallel") ? checker.typecheckProgramParallel(prog) : checker.typecheckProgram(prog);
+    }
+
+    // Runs the optimization passes enabled at the given -O level
+    static Program optimize(Program prog, int level) {
+        if (level >= 2) {
+            // Inline first, so folding sees through the inlined bodies
+            prog = (new Inliner()).inlineProgram(prog);
+        }
+        if (level >= 1) {
+            prog = (new Optimizer()).optimizeProgram(prog);
+        }
+        return prog;
     }
-    
-    private static void typecheck(Program prog) {
-        Type type = (new Typecheck()).typecheckProgram(prog);
-        System.out.println("Type: " + type);
+
+    // Runs a resolved program on the named execution engine
+    static Value run(String engine, Program prog) {
+        return switch (engine) {
+            case "tree" -> (new Interp()).interpProgram(prog);
+            case "closure" -> (new ClosureCompiler()).runProgram(prog);
+            case "specializing" -> (new SpecializingCompiler()).runProgram(prog);
+            case "vm" -> (new BytecodeVM()).runProgram(prog);
+            case "regvm" -> (new RegisterVM()).runProgram(prog);
+            case "jvm" -> (new JvmCompiler()).runProgram(prog);
+            case "heap" -> (new HeapInterp()).interpProgram(prog);
+            default -> throw new IllegalArgumentException("Unknown engine: " + engine);
+        };
     }
 
-    private static void interp(Program prog) {
-        Value result = (new Interp()).interpProgram(prog);
+    private static void interp(Program prog, String engine, boolean memo, boolean parallel) {
+        (new Resolver()).resolveProgram(prog);
+        Value result;
+        try {
+            if (parallel) {
+                result = (new Interp(false, true)).interpProgram(prog);
+            } else if (memo) {
+                // Only the tree interpreter memoizes; the hit rates go to stderr
+                Interp interp = new Interp(true);
+                try {
+                    result = interp.interpProgram(prog);
+                } finally {
+                    Builtins.flushOutput();
+                    interp.printMemoStats();
+                }
+            } else {
+                result = run(engine, prog);
+            }
+        } finally {
+            // The program's output is held back until it ends, including when it fails
+            Builtins.flushOutput();
+        }
         System.out.println("Result: " + result);
     }
 
+    // Runs the program, then again each time the file changes, parsing and
+    // typechecking only the defs that changed. Errors are reported and the
+    // watch goes on, until the process is killed.
+    private static void watch(Path path, boolean typecheckOnly, int optLevel, String engine, boolean memo, boolean parallel) throws Exception {
+        IncrementalCompiler compiler = new IncrementalCompiler();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            path.toAbsolutePath().getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            String previous = null;
+            while (true) {
+                String code = null;
+                try {
+                    code = Files.readString(path);
+                } catch (IOException ex) {
+                    // Editors that save by renaming leave a moment with no file
+                }
+                if (code != null && !code.equals(previous)) {
+                    previous = code;
+                    try {
+                        long start = System.nanoTime();
+                        Program p = compiler.compile(code);
+                        System.err.println("Compiled in " + (System.nanoTime() - start) / 1_000_000 + "ms: " + compiler.stats());
+                        System.out.println("Type: " + p.getMainExpr().getStaticType());
+                        if (!typecheckOnly) {
+                            interp(optimize(p, optLevel), engine, memo, parallel);
+                        }
+                    } catch (RuntimeException ex) {
+                        System.out.println("Error: " + ex.getMessage());
+                    } catch (StackOverflowError ex) {
+                        // Runaway recursion in the script ends this run, not the watch
+                        System.out.println("Error: stack overflow");
+                    }
+                }
+                // Wait for something in the file's directory to change
+                WatchKey key = watcher.take();
+                key.pollEvents();
+                key.reset();
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: ./run.(sh|bat) [-typecheck | -interp] [-O0..-O" + MAX_OPT_LEVEL
+                + "] [-engine=" + String.join("|", ENGINES) + "] [-frontend=" + String.join("|", FRONTENDS)
+                + "] [-memo | -parallel] [-outbuf=<chars>] [-cache | -cachedir=<dir> | -watch] <filename>");
+        System.out.println("The default front end stops at the first syntax error; -frontend=antlr reports it and goes on.");
+    }
+
+    static boolean isOptLevel(String arg) {
+        return arg.length() == 3 && arg.startsWith("-O")
+                && arg.charAt(2) >= '0' && arg.charAt(2) <= '0' + MAX_OPT_LEVEL;
+    }
+
     public static void main(String[] args) throws Exception {
-        if (args.length == 1) {
-            String inputFile = args[0];
-            Program p = loadAndParse(inputFile);
-            typecheck(p);
-            interp(p);
-        } else if (args.length == 2 && args[0].equals("-typecheck")) {
-            String inputFile = args[1];
-            Program p = loadAndParse(inputFile);
-            typecheck(p);
-        } else if (args.length == 2 && args[0].equals("-interp")) {
-            String inputFile = args[1];
-            Program p = loadAndParse(inputFile);
-            interp(p);
+        String mode = null;
+        String engine = "tree";
+        String frontend = FRONTENDS.get(0);
+        int optLevel = 0;
+        boolean memo = false;
+        boolean parallel = false;
+        boolean useCache = false;
+        boolean watch = false;
+        Path cacheDir = null;
+        String inputFile = null;
+        for (String arg : args) {
+            if ((arg.equals("-typecheck") || arg.equals("-interp")) && mode == null) {
+                mode = arg;
+            } else if (arg.startsWith("-engine=")) {
+                engine = arg.substring("-engine=".length());
+            } else if (arg.startsWith("-frontend=")) {
+                frontend = arg.substring("-frontend=".length());
+            } else if (isOptLevel(arg)) {
+                optLevel = arg.charAt(2) - '0';
+            } else if (arg.equals("-memo") && !parallel) {
+                memo = true;
+            } else if (arg.equals("-parallel") && !memo) {
+                parallel = true;
+            } else if (arg.equals("-cache")) {
+                useCache = true;
+            } else if (arg.equals("-watch")) {
+                watch = true;
+            } else if (arg.startsWith("-cachedir=")) {
+                useCache = true;
+                cacheDir = Paths.get(arg.substring("-cachedir=".length()));
+            } else if (arg.startsWith("-outbuf=")) {
+                int limit;
+                try {
+                    limit = Integer.parseInt(arg.substring("-outbuf=".length()));
+                } catch (NumberFormatException ex) {
+                    limit = -1;
+                }
+                // 0 writes out every print as it happens
+                if (limit < 0) {
+                    usage();
+                    return;
+                }
+                Builtins.setOutput(new BufferedOutputSink(System.out, limit));
+            } else if (!arg.startsWith("-") && inputFile == null) {
+                inputFile = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (inputFile == null || !ENGINES.contains(engine) || !FRONTENDS.contains(frontend) || ((memo || parallel) && !engine.equals("tree"))) {
+            usage();
+            return;
+        }
+        if (watch) {
+            // The incremental compiler has its own front end, and always typechecks
+            if (useCache || "-interp".equals(mode) || !frontend.equals(FRONTENDS.get(0))) {
+                usage();
+                return;
+            }
+            watch(Paths.get(inputFile), "-typecheck".equals(mode), optLevel, engine, memo, parallel);
+            return;
+        }
+
+        Program p;
+        if (useCache && !"-interp".equals(mode)) {
+            // Only typechecked programs are cached
+            p = loadTypechecked(Paths.get(inputFile), frontend, cacheDir);
+            System.out.println("Type: " + p.getMainExpr().getStaticType());
         } else {
-            System.out.println("Usage: ./run.(sh|bat) [-typecheck | -interp] <filename>");
+            p = loadAndParse(inputFile, frontend);
+            if (!"-interp".equals(mode)) {
+                Program typed = typecheck(p, frontend);
+                System.out.println("Type: " + typed.getMainExpr().getStaticType());
+            }
+        }
+        if (!"-typecheck".equals(mode)) {
+            interp(optimize(p, optLevel), engine, memo, parallel);
         }
     }
 }
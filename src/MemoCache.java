@@ -0,0 +1,138 @@
+import ast.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A bounded cache of the results of one pure function, keyed on its argument
+ * values. Functions taking at most two Ints get a direct-mapped table keyed
+ * on the arguments packed into a long, where a new entry simply overwrites
+ * whatever shared its slot; the others get a map of argument lists that
+ * evicts the least recently used entry once it is full.
+ *
+ * lookup and store read the arguments from the first slots of the callee's
+ * frame, which the body never overwrites.
+ */
+public abstract class MemoCache {
+
+    static final int TABLE_BITS = 14;
+    static final int LRU_CAPACITY = 1 << TABLE_BITS;
+
+    private final String fnName;
+    private long hits = 0;
+    private long misses = 0;
+
+    protected MemoCache(String fnName) {
+        this.fnName = fnName;
+    }
+
+    // The cache suited to fn's parameter types
+    public static MemoCache forFunction(FnDef fn) {
+        List<AnnotatedParam> params = fn.getParams();
+        if (params.size() <= 2 && params.stream().allMatch(p -> p.type == TyInt.type())) {
+            return new IntKeyed(fn.getFnName(), params.size());
+        }
+        return new Lru(fn.getFnName(), params.size());
+    }
+
+    // The cached result for the arguments in frame, or null
+    public Value lookup(Value[] frame) {
+        Value result = find(frame);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    protected abstract Value find(Value[] frame);
+
+    public abstract void store(Value[] frame, Value result);
+
+    public String stats() {
+        long calls = hits + misses;
+        return String.format("%s: %d hits / %d calls (%.1f%%)",
+                fnName, hits, calls, calls == 0 ? 0.0 : 100.0 * hits / calls);
+    }
+
+    static class IntKeyed extends MemoCache {
+        private final int arity;
+        private final long[] keys = new long[1 << TABLE_BITS];
+        private final Value[] values = new Value[1 << TABLE_BITS];
+
+        IntKeyed(String fnName, int arity) {
+            super(fnName);
+            this.arity = arity;
+        }
+
+        private long key(Value[] frame) {
+            long key = 0;
+            for (int i = 0; i < arity; i++) {
+                key = (key << 32) | (((VInt) frame[i]).getValue() & 0xFFFFFFFFL);
+            }
+            return key;
+        }
+
+        private static int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_BITS));
+        }
+
+        // Without Typecheck an argument may not be an Int; such calls bypass the table
+        private boolean allInts(Value[] frame) {
+            for (int i = 0; i < arity; i++) {
+                if (!(frame[i] instanceof VInt)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected Value find(Value[] frame) {
+            if (!allInts(frame)) {
+                return null;
+            }
+            long key = key(frame);
+            int slot = slot(key);
+            return keys[slot] == key ? values[slot] : null;
+        }
+
+        @Override
+        public void store(Value[] frame, Value result) {
+            if (allInts(frame)) {
+                long key = key(frame);
+                int slot = slot(key);
+                keys[slot] = key;
+                values[slot] = result;
+            }
+        }
+    }
+
+    static class Lru extends MemoCache {
+        private final int arity;
+        private final Map<List<Value>, Value> entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Value>, Value> eldest) {
+                return size() > LRU_CAPACITY;
+            }
+        };
+
+        Lru(String fnName, int arity) {
+            super(fnName);
+            this.arity = arity;
+        }
+
+        @Override
+        protected Value find(Value[] frame) {
+            return entries.get(Arrays.asList(frame).subList(0, arity));
+        }
+
+        @Override
+        public void store(Value[] frame, Value result) {
+            entries.put(List.of(Arrays.copyOf(frame, arity)), result);
+        }
+    }
+}
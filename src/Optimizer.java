@@ -0,0 +1,272 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * AST-to-AST optimizer, run between Typecheck and the Resolver (-O1). It folds
+ * operators, concatenations and casts whose operands are literals, propagates
+ * let-bound literals into their uses, picks the live branch of a conditional
+ * with a literal test, and drops lets whose binder is never used and whose
+ * subject can neither have an effect nor fail.
+ *
+ * Nothing that could fail at runtime is folded (division by zero, bad casts,
+ * operands of the wrong type), so those errors still happen when and if the
+ * expression is reached. New nodes carry the static type of the node they
+ * replace, so later passes can keep relying on Typecheck's annotations.
+ */
+public class Optimizer {
+
+    // Optimizes every function body and the main expression in place, and
+    // returns the program
+    public Program optimizeProgram(Program prog) {
+        for (FnDef fn : prog.getFunctionDefs()) {
+            Environment<Expr> constants = new Environment<>();
+            for (AnnotatedParam param : fn.getParams()) {
+                constants = constants.extend(param.symbol, null);
+            }
+            fn.setBody(optimizeExpr(constants, fn.getBody()));
+        }
+        prog.setMainExpr(optimizeExpr(new Environment<>(), prog.getMainExpr()));
+        return prog;
+    }
+
+    // Given the variables in scope, bound to their literal value if they are
+    // known to have one and to null otherwise, returns an optimized version of e
+    public Expr optimizeExpr(Environment<Expr> constants, Expr e) {
+        return switch (e) {
+            case EVar ev -> {
+                Expr constant = constants.contains(ev.getSymbol()) ? constants.lookup(ev.getSymbol()) : null;
+                yield constant != null ? constant : ev;
+            }
+            case EBinOp binOp -> {
+                Expr left = optimizeExpr(constants, binOp.getE1());
+                Expr right = optimizeExpr(constants, binOp.getE2());
+                Expr folded = foldBinOp(binOp.getOp(), left, right);
+                if (folded != null) {
+                    yield folded;
+                }
+                yield left == binOp.getE1() && right == binOp.getE2()
+                        ? binOp
+                        : typed(new EBinOp(left, binOp.getOp(), right), binOp);
+            }
+            case ENot en -> {
+                Expr inner = optimizeExpr(constants, en.getExpr());
+                if (inner instanceof EBool eb) {
+                    yield bool(!eb.getValue());
+                }
+                yield inner == en.getExpr() ? en : typed(new ENot(inner), en);
+            }
+            case ELet el -> {
+                Expr subject = optimizeExpr(constants, el.getSubject());
+                if (isLiteral(subject)) {
+                    // Every use gets the literal, so the binding itself is dead
+                    yield optimizeExpr(constants.extend(el.getBinderSymbol(), subject), el.getContinuation());
+                }
+                Expr continuation = optimizeExpr(constants.extend(el.getBinderSymbol(), null), el.getContinuation());
+                if (isDiscardable(subject) && !uses(el.getBinderSymbol(), continuation)) {
+                    yield continuation;
+                }
+                yield subject == el.getSubject() && continuation == el.getContinuation()
+                        ? el
+                        : typed(new ELet(el.getBinder(), subject, continuation), el);
+            }
+            case ECond ec -> {
+                Expr test = optimizeExpr(constants, ec.getTest());
+                if (test instanceof EBool eb) {
+                    yield optimizeExpr(constants, eb.getValue() ? ec.getThenBranch() : ec.getElseBranch());
+                }
+                Expr thenBranch = optimizeExpr(constants, ec.getThenBranch());
+                Expr elseBranch = optimizeExpr(constants, ec.getElseBranch());
+                yield test == ec.getTest() && thenBranch == ec.getThenBranch() && elseBranch == ec.getElseBranch()
+                        ? ec
+                        : typed(new ECond(test, thenBranch, elseBranch), ec);
+            }
+            case EFnCall efc -> {
+                List<Expr> args = optimizeAll(constants, efc.getArgs());
+                if (args == efc.getArgs()) {
+                    yield efc;
+                }
+                EFnCall call = typed(new EFnCall(efc.getFnName(), args), efc);
+                call.setFnDef(efc.getFnDef());
+                yield call;
+            }
+            case EConcat ec -> {
+                // Adjacent literal parts merge; the other parts keep their order
+                List<Expr> parts = new ArrayList<>();
+                for (Expr part : optimizeAll(constants, ec.getExprs())) {
+                    int last = parts.size() - 1;
+                    if (part instanceof EString s && last >= 0 && parts.get(last) instanceof EString prev) {
+                        parts.set(last, string(prev.getValue() + s.getValue()));
+                    } else {
+                        parts.add(part);
+                    }
+                }
+                if (parts.size() == 1 && parts.get(0) instanceof EString s) {
+                    yield s;
+                }
+                yield parts.equals(ec.getExprs()) ? ec : typed(new EConcat(parts), ec);
+            }
+            case EPrint ep -> {
+                Expr inner = optimizeExpr(constants, ep.getExpr());
+                yield inner == ep.getExpr() ? ep : typed(new EPrint(inner), ep);
+            }
+            case ECast ec -> {
+                Expr inner = optimizeExpr(constants, ec.getExpr());
+                if (isLiteral(inner)) {
+                    Expr folded = foldCast(inner, ec.getType());
+                    if (folded != null) {
+                        yield folded;
+                    }
+                } else if (inner.getStaticType() == ec.getType()) {
+                    // Casting to the type the expression already has does nothing
+                    yield inner;
+                }
+                yield inner == ec.getExpr() ? ec : typed(new ECast(inner, ec.getType()), ec);
+            }
+            default -> e;
+        };
+    }
+
+    // Returns the same list if no element changed, so unchanged nodes can be reused
+    private List<Expr> optimizeAll(Environment<Expr> constants, List<Expr> exprs) {
+        List<Expr> result = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expr expr : exprs) {
+            Expr optimized = optimizeExpr(constants, expr);
+            changed |= optimized != expr;
+            result.add(optimized);
+        }
+        return changed ? result : exprs;
+    }
+
+    // The literal value of a binary operator applied to literals, or null if it
+    // can't be folded (an operand isn't a literal, or applying it would fail)
+    private static Expr foldBinOp(EBinOp.Op op, Expr left, Expr right) {
+        if (left instanceof EInt l && right instanceof EInt r) {
+            int a = l.getValue();
+            int b = r.getValue();
+            return switch (op) {
+                case ADD -> integer(a + b);
+                case SUB -> integer(a - b);
+                case MUL -> integer(a * b);
+                case DIV -> b == 0 ? null : integer(a / b);
+                case MOD -> b == 0 ? null : integer(a % b);
+                case GT -> bool(a > b);
+                case LT -> bool(a < b);
+                case EQ -> bool(a == b);
+                default -> null;
+            };
+        }
+        if (left instanceof EBool l && right instanceof EBool r) {
+            return switch (op) {
+                case AND -> bool(l.getValue() && r.getValue());
+                case OR -> bool(l.getValue() || r.getValue());
+                case EQ -> bool(l.getValue() == r.getValue());
+                default -> null;
+            };
+        }
+        if (op == EBinOp.Op.EQ && left instanceof EString l && right instanceof EString r) {
+            return bool(l.getValue().equals(r.getValue()));
+        }
+        if (op == EBinOp.Op.EQ && left instanceof EUnit && right instanceof EUnit) {
+            return bool(true);
+        }
+        return null;
+    }
+
+    private static Expr foldCast(Expr literal, Type ty) {
+        Value from = switch (literal) {
+            case EInt ei -> ei.asValue();
+            case EBool eb -> eb.asValue();
+            case EString es -> es.asValue();
+            default -> VUnit.UNIT;
+        };
+        try {
+            return switch (Builtins.cast(from, ty)) {
+                case VInt vi -> integer(vi.getValue());
+                case VBool vb -> bool(vb.getValue());
+                case VString vs -> string(vs.getValue());
+                default -> unit();
+            };
+        } catch (CastException | NumberFormatException ex) {
+            // Digits that don't fit in an Int fail at runtime too
+            return null;
+        }
+    }
+
+    private static boolean isLiteral(Expr e) {
+        return e instanceof EInt || e instanceof EBool || e instanceof EString || e instanceof EUnit;
+    }
+
+    // Whether evaluating e can be skipped without changing what the program
+    // does: no input or output, no calls (which might not return), and nothing
+    // that can fail. Without static types an operand could have the wrong type,
+    // so only typechecked expressions qualify.
+    private static boolean isDiscardable(Expr e) {
+        if (e.getStaticType() == null) {
+            return false;
+        }
+        return switch (e) {
+            case EInt ignored -> true;
+            case EBool ignored -> true;
+            case EString ignored -> true;
+            case EUnit ignored -> true;
+            case EVar ignored -> true;
+            case EBinOp binOp -> binOp.getOp() != EBinOp.Op.DIV && binOp.getOp() != EBinOp.Op.MOD
+                    && isDiscardable(binOp.getE1()) && isDiscardable(binOp.getE2());
+            case ENot en -> isDiscardable(en.getExpr());
+            case ELet el -> isDiscardable(el.getSubject()) && isDiscardable(el.getContinuation());
+            case ECond ec -> isDiscardable(ec.getTest())
+                    && isDiscardable(ec.getThenBranch()) && isDiscardable(ec.getElseBranch());
+            case EConcat ec -> ec.getExprs().stream().allMatch(Optimizer::isDiscardable);
+            default -> false;
+        };
+    }
+
+    // Whether the variable var, as bound outside e, is referred to in e
+    private static boolean uses(int var, Expr e) {
+        return switch (e) {
+            case EVar ev -> ev.getSymbol() == var;
+            case EBinOp binOp -> uses(var, binOp.getE1()) || uses(var, binOp.getE2());
+            case ENot en -> uses(var, en.getExpr());
+            case ELet el -> uses(var, el.getSubject())
+                    || (el.getBinderSymbol() != var && uses(var, el.getContinuation()));
+            case ECond ec -> uses(var, ec.getTest()) || uses(var, ec.getThenBranch()) || uses(var, ec.getElseBranch());
+            case EFnCall efc -> efc.getArgs().stream().anyMatch(arg -> uses(var, arg));
+            case EConcat ec -> ec.getExprs().stream().anyMatch(part -> uses(var, part));
+            case EPrint ep -> uses(var, ep.getExpr());
+            case ECast ec -> uses(var, ec.getExpr());
+            default -> false;
+        };
+    }
+
+    private static <T extends Expr> T typed(T e, Expr original) {
+        e.setStaticType(original.getStaticType());
+        return e;
+    }
+
+    private static EInt integer(int n) {
+        EInt e = new EInt(n);
+        e.setStaticType(TyInt.type());
+        return e;
+    }
+
+    private static EBool bool(boolean b) {
+        EBool e = new EBool(b);
+        e.setStaticType(TyBool.type());
+        return e;
+    }
+
+    private static EString string(String s) {
+        EString e = new EString(s);
+        e.setStaticType(TyString.type());
+        return e;
+    }
+
+    private static EUnit unit() {
+        EUnit e = new EUnit();
+        e.setStaticType(TyUnit.type());
+        return e;
+    }
+}
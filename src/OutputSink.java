@@ -0,0 +1,12 @@
+/*
+ * Where the lines a program prints go. Builtins sends every print to the
+ * current sink, and flushes it before reading input and when the program
+ * ends, so a sink may hold output back until then.
+ */
+public interface OutputSink {
+
+    void println(String line);
+
+    // Writes out anything held back
+    void flush();
+}
@@ -0,0 +1,159 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/*
+ * A front end for sources with many functions. A cheap scan of the characters
+ * finds where each top-level def starts (a "def" outside braces and strings),
+ * and the defs are then parsed in parallel with RecursiveDescentParser, each
+ * from its own offset, so line and column numbers are those of the whole file.
+ * The defs are put back together in source order.
+ *
+ * The scan doesn't tokenize, so it can be fooled by a malformed program. Each
+ * def's parse must therefore end exactly where the next def was found, and
+ * the last one must be followed by the main expression. If any of that fails,
+ * or any def doesn't parse or has text the lexer skips, the whole source is
+ * parsed again sequentially: a program is either split the way the sequential
+ * parser would read it, or gets the sequential parser's result and error
+ * messages.
+ *
+ * Typecheck.typecheckProgramParallel is the matching parallel typecheck.
+ */
+public class ParallelFrontEnd {
+
+    public static Program parse(String code) {
+        Split split = split(code);
+        Program prog = split == null ? null : parseSplit(code, split, new FnDef[split.count]);
+        return prog != null ? prog : new RecursiveDescentParser(code).parseProgram();
+    }
+
+    // Parses the defs of the split source that aren't already in defs, then
+    // the main expression, and returns the program, or null if it has to be
+    // parsed sequentially. The last def is always parsed, since the main
+    // expression is parsed after it; IncrementalCompiler fills in the others
+    // it has seen before.
+    static Program parseSplit(String code, Split split, FnDef[] defs) {
+        int count = split.count;
+        Expr[] mainExpr = new Expr[1];
+        AtomicBoolean failed = new AtomicBoolean();
+        IntStream.range(0, count).parallel().forEach(i -> {
+            if (failed.get() || (defs[i] != null && i < count - 1)) {
+                return;
+            }
+            try {
+                Tokenizer tokens = new Tokenizer(code, split.starts[i], split.lines[i], split.lineStarts[i]);
+                RecursiveDescentParser parser = new RecursiveDescentParser(tokens);
+                defs[i] = parser.parseDef();
+                if (i < count - 1) {
+                    if (tokens.start != split.starts[i + 1]) {
+                        failed.set(true);
+                    }
+                } else if (tokens.kind == Tokenizer.DEF) {
+                    failed.set(true);
+                } else {
+                    mainExpr[0] = parser.parseExpr();
+                }
+                if (tokens.errorCount > 0) {
+                    failed.set(true);
+                }
+            } catch (RuntimeException | StackOverflowError ex) {
+                // Worker threads have smaller stacks than the main thread, so
+                // deep nesting is also left to the sequential parser
+                failed.set(true);
+            }
+        });
+        if (failed.get()) {
+            return null;
+        }
+        return new Program(new ArrayList<>(Arrays.asList(defs)), mainExpr[0]);
+    }
+
+    // Where each top-level def starts, with the line it is on and the offset
+    // that line starts at
+    static class Split {
+        int count = 0;
+        int[] starts = new int[16];
+        int[] lines = new int[16];
+        int[] lineStarts = new int[16];
+
+        void add(int start, int line, int lineStart) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+                lineStarts = Arrays.copyOf(lineStarts, count * 2);
+            }
+            starts[count] = start;
+            lines[count] = line;
+            lineStarts[count] = lineStart;
+            count++;
+        }
+    }
+
+    // Finds the top-level defs, counting lines the way Tokenizer does. Returns
+    // null if there are none, or if the source doesn't start with one.
+    static Split split(String code) {
+        Split split = new Split();
+        int length = code.length();
+        int depth = 0;
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            switch (c) {
+                case '\n' -> {
+                    line++;
+                    lineStart = i + 1;
+                }
+                case '{' -> depth++;
+                case '}' -> depth--;
+                case '"' -> {
+                    // Skip the string; a backslash takes the next character with it
+                    for (i++; i < length && code.charAt(i) != '"'; i++) {
+                        if (code.charAt(i) == '\\' && i + 1 < length) {
+                            i++;
+                        }
+                        if (code.charAt(i) == '\n') {
+                            line++;
+                            lineStart = i + 1;
+                        }
+                    }
+                    if (i == length) {
+                        return null;
+                    }
+                }
+                case 'd' -> {
+                    if (depth == 0 && code.startsWith("def", i)
+                            && (i == 0 || !isWordChar(code.charAt(i - 1)))
+                            && (i + 3 == length || !isWordChar(code.charAt(i + 3)))) {
+                        if (split.count == 0 && !isWhitespace(code, 0, i)) {
+                            return null;
+                        }
+                        split.add(i, line, lineStart);
+                        i += 2;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return split.count == 0 ? null : split;
+    }
+
+    // Whether the characters from start to end are all ones Tokenizer skips
+    private static boolean isWhitespace(String code, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = code.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+}
@@ -0,0 +1,415 @@
+import ast.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Caches typechecked programs in a compact binary form (.digc files), so an
+ * unchanged script can be run without lexing, parsing or typechecking it. The
+ * file starts with a magic number, a format version and the SHA-256 of the
+ * source it was compiled from; a file whose hash doesn't match the current
+ * source is ignored and overwritten. The header is read first, and only a hit
+ * is then read through a memory mapping.
+ *
+ * The body is a table of the distinct names and string literals, the function
+ * headers, then the function bodies and the main expression in prefix order.
+ * Each expression node is a tag byte and its static type, so the loaded tree
+ * carries the same annotations as a freshly typechecked one, including the
+ * definition each call resolves to.
+ */
+public class ProgramCache {
+
+    private static final int MAGIC = 0x44494743; // "DIGC"
+    private static final int VERSION = 1;
+    private static final int HASH_SIZE = 32;
+
+    private static final byte INT = 0;
+    private static final byte BOOL = 1;
+    private static final byte STRING = 2;
+    private static final byte UNIT = 3;
+    private static final byte VAR = 4;
+    private static final byte BINOP = 5;
+    private static final byte NOT = 6;
+    private static final byte LET = 7;
+    private static final byte COND = 8;
+    private static final byte CALL = 9;
+    private static final byte CONCAT = 10;
+    private static final byte PRINT = 11;
+    private static final byte GET_INPUT = 12;
+    private static final byte CAST = 13;
+
+    // Types are written as their index here; 0 stands for none
+    private static final Type[] TYPES = { null, TyInt.type(), TyBool.type(), TyString.type(), TyUnit.type() };
+
+    private static final EBinOp.Op[] OPS = EBinOp.Op.values();
+
+    private final Path cacheFile;
+    private final byte[] sourceHash;
+
+    // Where the cached form of source lives: next to it, or in cacheDir if
+    // that isn't null, named after the source's hash
+    public ProgramCache(Path source, byte[] sourceBytes, Path cacheDir) {
+        this.sourceHash = sha256(sourceBytes);
+        if (cacheDir == null) {
+            String name = source.getFileName().toString();
+            if (name.endsWith(".dig")) {
+                name = name.substring(0, name.length() - ".dig".length());
+            }
+            this.cacheFile = source.resolveSibling(name + ".digc");
+        } else {
+            this.cacheFile = cacheDir.resolve(hex(sourceHash) + ".digc");
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // Returns the cached program, or null if there is no usable cache entry
+    public Program load() {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            // The header is read rather than mapped, so a stale entry is never
+            // mapped: a mapping outlives the channel, and on some systems a
+            // mapped file can't be replaced by store()
+            ByteBuffer header = ByteBuffer.allocate(8 + HASH_SIZE);
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Until the header is full or the file ends
+            }
+            header.flip();
+            if (header.remaining() < 8 + HASH_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_SIZE];
+            header.get(hash);
+            if (!Arrays.equals(hash, sourceHash)) {
+                return null;
+            }
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.position(8 + HASH_SIZE);
+            return new Reader(in).readProgram();
+        } catch (IOException | RuntimeException | StackOverflowError ex) {
+            // A damaged or unreadable entry is a miss; it is rewritten after compiling
+            return null;
+        }
+    }
+
+    // Writes prog, which must have been typechecked and not yet optimized or
+    // resolved. The file is written under a temporary name and then moved into
+    // place, so concurrent runs never see half of one. Failing to write the
+    // cache doesn't stop the run.
+    public void store(Program prog) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(sourceHash);
+            new Writer(out, prog).writeProgram();
+            out.flush();
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path temp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), ".digc", ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            System.err.println("Could not write " + cacheFile + ": " + ex.getMessage());
+        }
+    }
+
+    private static byte typeIndex(Type ty) {
+        for (byte i = 1; i < TYPES.length; i++) {
+            if (TYPES[i] == ty) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final Program prog;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Map<FnDef, Integer> fnIndex = new HashMap<>();
+
+        Writer(DataOutputStream out, Program prog) {
+            this.out = out;
+            this.prog = prog;
+        }
+
+        void writeProgram() throws IOException {
+            List<FnDef> fns = prog.getFunctionDefs();
+            for (int i = 0; i < fns.size(); i++) {
+                FnDef fn = fns.get(i);
+                fnIndex.put(fn, i);
+                intern(fn.getFnName());
+                fn.getParams().forEach(p -> intern(p.param));
+                collectStrings(fn.getBody());
+            }
+            collectStrings(prog.getMainExpr());
+
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(fns.size());
+            for (FnDef fn : fns) {
+                out.writeInt(stringIndex.get(fn.getFnName()));
+                out.writeInt(fn.getParams().size());
+                for (AnnotatedParam param : fn.getParams()) {
+                    out.writeInt(stringIndex.get(param.param));
+                    out.writeByte(typeIndex(param.type));
+                }
+                out.writeByte(typeIndex(fn.getReturnType()));
+            }
+            for (FnDef fn : fns) {
+                writeExpr(fn.getBody());
+            }
+            writeExpr(prog.getMainExpr());
+        }
+
+        private void intern(String s) {
+            if (!stringIndex.containsKey(s)) {
+                stringIndex.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+
+        private void collectStrings(Expr e) {
+            switch (e) {
+                case EString es -> intern(es.getValue());
+                case EVar ev -> intern(ev.getVar());
+                case EBinOp binOp -> {
+                    collectStrings(binOp.getE1());
+                    collectStrings(binOp.getE2());
+                }
+                case ENot en -> collectStrings(en.getExpr());
+                case ELet el -> {
+                    intern(el.getBinder());
+                    collectStrings(el.getSubject());
+                    collectStrings(el.getContinuation());
+                }
+                case ECond ec -> {
+                    collectStrings(ec.getTest());
+                    collectStrings(ec.getThenBranch());
+                    collectStrings(ec.getElseBranch());
+                }
+                case EFnCall efc -> {
+                    intern(efc.getFnName());
+                    efc.getArgs().forEach(this::collectStrings);
+                }
+                case EConcat ec -> ec.getExprs().forEach(this::collectStrings);
+                case EPrint ep -> collectStrings(ep.getExpr());
+                case ECast ec -> collectStrings(ec.getExpr());
+                default -> {
+                }
+            }
+        }
+
+        private void writeExprs(List<Expr> exprs) throws IOException {
+            out.writeInt(exprs.size());
+            for (Expr e : exprs) {
+                writeExpr(e);
+            }
+        }
+
+        private void writeExpr(Expr e) throws IOException {
+            byte tag = switch (e) {
+                case EInt ignored -> INT;
+                case EBool ignored -> BOOL;
+                case EString ignored -> STRING;
+                case EUnit ignored -> UNIT;
+                case EVar ignored -> VAR;
+                case EBinOp ignored -> BINOP;
+                case ENot ignored -> NOT;
+                case ELet ignored -> LET;
+                case ECond ignored -> COND;
+                case EFnCall ignored -> CALL;
+                case EConcat ignored -> CONCAT;
+                case EPrint ignored -> PRINT;
+                case EGetInput ignored -> GET_INPUT;
+                case ECast ignored -> CAST;
+                default -> throw new RuntimeException("Unrecognized expression type: " + e);
+            };
+            out.writeByte(tag);
+            out.writeByte(typeIndex(e.getStaticType()));
+            switch (e) {
+                case EInt ei -> out.writeInt(ei.getValue());
+                case EBool eb -> out.writeBoolean(eb.getValue());
+                case EString es -> out.writeInt(stringIndex.get(es.getValue()));
+                case EVar ev -> out.writeInt(stringIndex.get(ev.getVar()));
+                case EBinOp binOp -> {
+                    out.writeByte(binOp.getOp().ordinal());
+                    writeExpr(binOp.getE1());
+                    writeExpr(binOp.getE2());
+                }
+                case ENot en -> writeExpr(en.getExpr());
+                case ELet el -> {
+                    out.writeInt(stringIndex.get(el.getBinder()));
+                    writeExpr(el.getSubject());
+                    writeExpr(el.getContinuation());
+                }
+                case ECond ec -> {
+                    writeExpr(ec.getTest());
+                    writeExpr(ec.getThenBranch());
+                    writeExpr(ec.getElseBranch());
+                }
+                case EFnCall efc -> {
+                    out.writeInt(stringIndex.get(efc.getFnName()));
+                    out.writeInt(efc.getFnDef() == null ? -1 : fnIndex.get(efc.getFnDef()));
+                    writeExprs(efc.getArgs());
+                }
+                case EConcat ec -> writeExprs(ec.getExprs());
+                case EPrint ep -> writeExpr(ep.getExpr());
+                case ECast ec -> {
+                    out.writeByte(typeIndex(ec.getType()));
+                    writeExpr(ec.getExpr());
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer in;
+        private String[] strings;
+        private FnDef[] fns;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        Program readProgram() {
+            strings = new String[readCount(4)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[readCount(1)];
+                in.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+            // Headers first, so calls in any body can refer to any function
+            fns = new FnDef[readCount(9)];
+            for (int i = 0; i < fns.length; i++) {
+                String name = readString();
+                List<AnnotatedParam> params = new ArrayList<>();
+                int paramCount = readCount(5);
+                for (int j = 0; j < paramCount; j++) {
+                    String param = readString();
+                    params.add(new AnnotatedParam(param, TYPES[in.get()]));
+                }
+                fns[i] = new FnDef(name, params, TYPES[in.get()], null);
+            }
+            for (FnDef fn : fns) {
+                fn.setBody(readExpr());
+            }
+            return new Program(new ArrayList<>(Arrays.asList(fns)), readExpr());
+        }
+
+        // Reads a count of items of at least minSize bytes each. A damaged
+        // entry could hold any number, so it is checked against what is left
+        // of the file before anything is allocated for it.
+        private int readCount(int minSize) {
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / minSize) {
+                throw new IllegalStateException("Bad count " + count);
+            }
+            return count;
+        }
+
+        private String readString() {
+            int index = in.getInt();
+            if (index < 0 || index >= strings.length) {
+                throw new IllegalStateException("Bad string index " + index);
+            }
+            return strings[index];
+        }
+
+        private List<Expr> readExprs() {
+            int count = readCount(2);
+            List<Expr> exprs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                exprs.add(readExpr());
+            }
+            return exprs;
+        }
+
+        private Expr readExpr() {
+            byte tag = in.get();
+            Type staticType = TYPES[in.get()];
+            Expr e = switch (tag) {
+                case INT -> new EInt(in.getInt());
+                case BOOL -> new EBool(in.get() != 0);
+                case STRING -> new EString(readString());
+                case UNIT -> new EUnit();
+                case VAR -> new EVar(readString());
+                case BINOP -> {
+                    EBinOp.Op op = OPS[in.get()];
+                    Expr e1 = readExpr();
+                    yield new EBinOp(e1, op, readExpr());
+                }
+                case NOT -> new ENot(readExpr());
+                case LET -> {
+                    String binder = readString();
+                    Expr subject = readExpr();
+                    yield new ELet(binder, subject, readExpr());
+                }
+                case COND -> {
+                    Expr test = readExpr();
+                    Expr thenBranch = readExpr();
+                    yield new ECond(test, thenBranch, readExpr());
+                }
+                case CALL -> {
+                    String name = readString();
+                    int fn = in.getInt();
+                    if (fn < -1 || fn >= fns.length) {
+                        throw new IllegalStateException("Bad function index " + fn);
+                    }
+                    EFnCall call = new EFnCall(name, readExprs());
+                    call.setFnDef(fn < 0 ? null : fns[fn]);
+                    yield call;
+                }
+                case CONCAT -> new EConcat(readExprs());
+                case PRINT -> new EPrint(readExpr());
+                case GET_INPUT -> new EGetInput();
+                case CAST -> {
+                    Type ty = TYPES[in.get()];
+                    yield new ECast(readExpr(), ty);
+                }
+                default -> throw new IllegalStateException("Bad expression tag " + tag);
+            };
+            e.setStaticType(staticType);
+            return e;
+        }
+    }
+}
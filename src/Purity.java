@@ -0,0 +1,93 @@
+import ast.*;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Finds the pure functions of a program: those whose body, and the bodies of
+ * every function they can call, contains no print or getInput. A call to a
+ * pure function with the same arguments always has the same result (or fails
+ * in the same way), so its result can be reused.
+ */
+public class Purity {
+
+    // Returns the pure functions of prog
+    public static Set<FnDef> pureFunctions(Program prog) {
+        IntMap<FnDef> fnDefs = new IntMap<>(prog.getFunctionDefs().size());
+        BitSet defined = new BitSet();
+        for (FnDef fn : prog.getFunctionDefs()) {
+            fnDefs.put(fn.getFnSymbol(), fn);
+            defined.set(fn.getFnSymbol());
+        }
+        Map<FnDef, BitSet> callees = new HashMap<>();
+        Set<FnDef> pure = new HashSet<>();
+        for (FnDef fn : prog.getFunctionDefs()) {
+            BitSet called = new BitSet();
+            if (!hasEffects(fn.getBody(), called) && containsAll(defined, called)) {
+                pure.add(fn);
+                callees.put(fn, called);
+            }
+        }
+        // Drop functions that call an impure one, until nothing changes
+        boolean changed = true;
+        while (changed) {
+            changed = pure.removeIf(fn -> callees.get(fn).stream()
+                    .anyMatch(symbol -> !pure.contains(fnDefs.get(symbol))));
+        }
+        return pure;
+    }
+
+    // Whether evaluating e can't do input or output, given the symbols of the
+    // pure functions
+    public static boolean isPure(Expr e, BitSet pureNames) {
+        BitSet called = new BitSet();
+        return !hasEffects(e, called) && containsAll(pureNames, called);
+    }
+
+    // Whether e contains a function call
+    public static boolean hasCalls(Expr e) {
+        BitSet called = new BitSet();
+        hasEffects(e, called);
+        return !called.isEmpty();
+    }
+
+    private static boolean containsAll(BitSet set, BitSet subset) {
+        BitSet missing = (BitSet) subset.clone();
+        missing.andNot(set);
+        return missing.isEmpty();
+    }
+
+    // Whether e does input or output itself, adding the symbols of the
+    // functions it calls to called
+    private static boolean hasEffects(Expr e, BitSet called) {
+        return switch (e) {
+            case EPrint ignored -> true;
+            case EGetInput ignored -> true;
+            case EBinOp binOp -> hasEffects(binOp.getE1(), called) | hasEffects(binOp.getE2(), called);
+            case ENot en -> hasEffects(en.getExpr(), called);
+            case ELet el -> hasEffects(el.getSubject(), called) | hasEffects(el.getContinuation(), called);
+            case ECond ec -> hasEffects(ec.getTest(), called)
+                    | hasEffects(ec.getThenBranch(), called) | hasEffects(ec.getElseBranch(), called);
+            case EFnCall efc -> {
+                called.set(efc.getFnSymbol());
+                boolean effects = false;
+                for (Expr arg : efc.getArgs()) {
+                    effects |= hasEffects(arg, called);
+                }
+                yield effects;
+            }
+            case EConcat ec -> {
+                boolean effects = false;
+                for (Expr part : ec.getExprs()) {
+                    effects |= hasEffects(part, called);
+                }
+                yield effects;
+            }
+            case ECast ec -> hasEffects(ec.getExpr(), called);
+            default -> false;
+        };
+    }
+}
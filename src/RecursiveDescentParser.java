@@ -0,0 +1,254 @@
+import ast.*;
+import ast.EBinOp.Op;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * A hand-written parser for Diggleby.g4 that builds the AST directly from the
+ * tokens, without the ANTLR token stream, parse tree and visitor. It accepts
+ * the same programs and builds the same trees as the ANTLR front end, which
+ * is kept as the reference (see -frontend=diff in Main).
+ *
+ * Errors are handled differently. Text the lexer can't match is reported and
+ * skipped as ANTLR's lexer does (see Tokenizer), but the first syntax error
+ * ends the parse with an exception, where ANTLR's parser reports it, deletes
+ * or makes up a token, and goes on.
+ *
+ * Binary operators are parsed by precedence climbing. As in the grammar, the
+ * comparisons bind tightest, then the boolean operators, then * / %, then
+ * + -, and all of them associate to the left. Like the grammar's prog rule,
+ * parsing stops after the main expression, ignoring anything that follows.
+ */
+public class RecursiveDescentParser {
+
+    private final Tokenizer tokens;
+
+    public RecursiveDescentParser(String source) {
+        this(new Tokenizer(source));
+    }
+
+    public RecursiveDescentParser(Tokenizer tokens) {
+        this.tokens = tokens;
+    }
+
+    public Program parseProgram() {
+        List<FnDef> defs = new ArrayList<>();
+        while (tokens.kind == Tokenizer.DEF) {
+            defs.add(parseDef());
+        }
+        Expr mainExpr = parseExpr();
+        return new Program(defs, mainExpr);
+    }
+
+    FnDef parseDef() {
+        expect(Tokenizer.DEF, "'def'");
+        String name = expectIdent();
+        expect(Tokenizer.LPAREN, "'('");
+        List<AnnotatedParam> params = new ArrayList<>();
+        if (tokens.kind != Tokenizer.RPAREN) {
+            do {
+                String param = expectIdent();
+                expect(Tokenizer.COLON, "':'");
+                params.add(new AnnotatedParam(param, parseType()));
+            } while (accept(Tokenizer.COMMA));
+        }
+        expect(Tokenizer.RPAREN, "')'");
+        expect(Tokenizer.COLON, "':'");
+        Type returnType = parseType();
+        expect(Tokenizer.LBRACE, "'{'");
+        Expr body = parseExpr();
+        expect(Tokenizer.RBRACE, "'}'");
+        return new FnDef(name, params, returnType, body);
+    }
+
+    private Type parseType() {
+        Type type = switch (tokens.kind) {
+            case Tokenizer.TY_BOOL -> TyBool.type();
+            case Tokenizer.TY_INT -> TyInt.type();
+            case Tokenizer.TY_STRING -> TyString.type();
+            case Tokenizer.TY_UNIT -> TyUnit.type();
+            default -> throw mismatch("a type");
+        };
+        tokens.next();
+        return type;
+    }
+
+    // expr: a let, whose subject is a base_expr, or a base_expr
+    Expr parseExpr() {
+        if (accept(Tokenizer.LET)) {
+            String binder = expectIdent();
+            expect(Tokenizer.EQ, "'='");
+            Expr subject = parseBaseExpr(0);
+            expect(Tokenizer.IN, "'in'");
+            return new ELet(binder, subject, parseExpr());
+        }
+        return parseBaseExpr(0);
+    }
+
+    // Parses operands joined by operators of at least the given precedence
+    private Expr parseBaseExpr(int minPrecedence) {
+        Expr left = parsePrimary();
+        while (true) {
+            int precedence = precedence(tokens.kind);
+            if (precedence == 0 || precedence < minPrecedence) {
+                return left;
+            }
+            Op op = switch (tokens.kind) {
+                case Tokenizer.LT -> Op.LT;
+                case Tokenizer.GT -> Op.GT;
+                case Tokenizer.EQQ -> Op.EQ;
+                case Tokenizer.AND -> Op.AND;
+                case Tokenizer.OR -> Op.OR;
+                case Tokenizer.MUL -> Op.MUL;
+                case Tokenizer.DIV -> Op.DIV;
+                case Tokenizer.MOD -> Op.MOD;
+                case Tokenizer.PLUS -> Op.ADD;
+                case Tokenizer.MINUS -> Op.SUB;
+                // The grammar has ^ but the language doesn't
+                default -> throw tokens.error("bad bool op");
+            };
+            tokens.next();
+            left = new EBinOp(left, op, parseBaseExpr(precedence + 1));
+        }
+    }
+
+    private static int precedence(int kind) {
+        return switch (kind) {
+            case Tokenizer.LT, Tokenizer.GT, Tokenizer.EQQ -> 4;
+            case Tokenizer.AND, Tokenizer.OR, Tokenizer.XOR -> 3;
+            case Tokenizer.MUL, Tokenizer.DIV, Tokenizer.MOD -> 2;
+            case Tokenizer.PLUS, Tokenizer.MINUS -> 1;
+            default -> 0;
+        };
+    }
+
+    private Expr parsePrimary() {
+        switch (tokens.kind) {
+            case Tokenizer.NOT -> {
+                tokens.next();
+                return new ENot(parseFact());
+            }
+            case Tokenizer.CONCAT -> {
+                tokens.next();
+                return new EConcat(parseArgs());
+            }
+            case Tokenizer.PRINT -> {
+                tokens.next();
+                expect(Tokenizer.LPAREN, "'('");
+                Expr e = parseExpr();
+                expect(Tokenizer.RPAREN, "')'");
+                return new EPrint(e);
+            }
+            case Tokenizer.GETINPUT -> {
+                tokens.next();
+                expect(Tokenizer.LPAREN, "'('");
+                expect(Tokenizer.RPAREN, "')'");
+                return new EGetInput();
+            }
+            case Tokenizer.IDENT -> {
+                String name = tokens.text();
+                tokens.next();
+                if (tokens.kind == Tokenizer.LPAREN) {
+                    return new EFnCall(name, parseArgs());
+                }
+                return new EVar(name);
+            }
+            case Tokenizer.IF -> {
+                tokens.next();
+                expect(Tokenizer.LPAREN, "'('");
+                Expr test = parseExpr();
+                expect(Tokenizer.RPAREN, "')'");
+                expect(Tokenizer.LBRACE, "'{'");
+                Expr thenBranch = parseExpr();
+                expect(Tokenizer.RBRACE, "'}'");
+                expect(Tokenizer.ELSE, "'else'");
+                expect(Tokenizer.LBRACE, "'{'");
+                Expr elseBranch = parseExpr();
+                expect(Tokenizer.RBRACE, "'}'");
+                return new ECond(test, thenBranch, elseBranch);
+            }
+            case Tokenizer.LPAREN -> {
+                // Unit, a parenthesized expression or a cast
+                tokens.next();
+                if (accept(Tokenizer.RPAREN)) {
+                    return new EUnit();
+                }
+                Expr e = parseExpr();
+                if (accept(Tokenizer.COLON)) {
+                    e = new ECast(e, parseType());
+                }
+                expect(Tokenizer.RPAREN, "')'");
+                return e;
+            }
+            default -> {
+                return parseFact();
+            }
+        }
+    }
+
+    // fact: the operand of !, which can't be a call or a cast
+    private Expr parseFact() {
+        Expr e = switch (tokens.kind) {
+            case Tokenizer.TRUE -> new EBool(true);
+            case Tokenizer.FALSE -> new EBool(false);
+            case Tokenizer.INT -> new EInt(Integer.valueOf(tokens.text()));
+            case Tokenizer.STR -> new EString(tokens.text().substring(1, tokens.end - tokens.start - 1));
+            case Tokenizer.IDENT -> new EVar(tokens.text());
+            case Tokenizer.LPAREN -> {
+                tokens.next();
+                if (tokens.kind == Tokenizer.RPAREN) {
+                    yield new EUnit();
+                }
+                Expr inner = parseExpr();
+                if (tokens.kind != Tokenizer.RPAREN) {
+                    throw mismatch("')'");
+                }
+                yield inner;
+            }
+            default -> throw mismatch("an expression");
+        };
+        tokens.next();
+        return e;
+    }
+
+    // A parenthesized, comma-separated and possibly empty list of expressions
+    private List<Expr> parseArgs() {
+        expect(Tokenizer.LPAREN, "'('");
+        List<Expr> args = new ArrayList<>();
+        if (tokens.kind != Tokenizer.RPAREN) {
+            do {
+                args.add(parseExpr());
+            } while (accept(Tokenizer.COMMA));
+        }
+        expect(Tokenizer.RPAREN, "')'");
+        return args;
+    }
+
+    private boolean accept(int kind) {
+        if (tokens.kind == kind) {
+            tokens.next();
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(int kind, String what) {
+        if (!accept(kind)) {
+            throw mismatch(what);
+        }
+    }
+
+    private String expectIdent() {
+        if (tokens.kind != Tokenizer.IDENT) {
+            throw mismatch("an identifier");
+        }
+        String name = tokens.text();
+        tokens.next();
+        return name;
+    }
+
+    private RuntimeException mismatch(String expected) {
+        return tokens.error("mismatched input " + tokens.describe() + " expecting " + expected);
+    }
+}
@@ -0,0 +1,184 @@
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Compiles a program to the register bytecode described in RegisterProgram.
+ * The program is first lowered to A-normal form and resolved, which makes
+ * every temporary a let binder: its frame slot is then simply its register,
+ * and every operand of an operator or call is already a register or a
+ * constant. One extra register past the frame holds a function's result
+ * when it is not already in a register.
+ */
+public class RegisterCompiler {
+
+    private final IntMap<Integer> fnIndices = new IntMap<>();
+    private final List<Value> constants = new ArrayList<>();
+    private final Map<Value, Integer> constantIndices = new HashMap<>();
+
+    // State for the function currently being compiled
+    private int[] code;
+    private int length;
+    private int resultRegister;
+
+    public RegisterProgram compileProgram(Program prog) {
+        Program anf = (new AnfLowering()).lowerProgram(prog);
+        (new Resolver()).resolveProgram(anf);
+
+        List<FnDef> defs = anf.getFunctionDefs();
+        for (int i = 0; i < defs.size(); i++) {
+            fnIndices.put(defs.get(i).getFnSymbol(), i);
+        }
+        RegisterProgram.Function[] functions = new RegisterProgram.Function[defs.size()];
+        for (int i = 0; i < defs.size(); i++) {
+            FnDef def = defs.get(i);
+            functions[i] = compileFunction(def.getFnName(), def.getParams().size(),
+                    def.getFrameSize(), def.getBody());
+        }
+        RegisterProgram.Function main = compileFunction("main", 0,
+                anf.getMainFrameSize(), anf.getMainExpr());
+        return new RegisterProgram(functions, main, constants.toArray(new Value[0]));
+    }
+
+    private RegisterProgram.Function compileFunction(String name, int arity, int frameSize, Expr body) {
+        code = new int[16];
+        length = 0;
+        resultRegister = frameSize;
+        compileTail(body);
+        return new RegisterProgram.Function(name, arity, frameSize + 1, Arrays.copyOf(code, length));
+    }
+
+    private void emit(int... words) {
+        for (int word : words) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = word;
+        }
+    }
+
+    // Values are immutable, so every use of a literal can share one pooled instance
+    private int constant(Value v) {
+        return constantIndices.computeIfAbsent(v, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+    }
+
+    // The operand encoding of an atom: its register, or its constant pool entry
+    private int operand(Expr atom) {
+        return switch (atom) {
+            case EVar ev -> ev.getSlot();
+            case EInt ei -> -1 - constant(ei.asValue());
+            case EBool eb -> -1 - constant(eb.asValue());
+            case EString es -> -1 - constant(es.asValue());
+            case EUnit ignored -> -1 - constant(VUnit.UNIT);
+            default -> throw new RuntimeException("Expected an atom but got " + atom);
+        };
+    }
+
+    private static int binOpCode(EBinOp.Op op) {
+        return switch (op) {
+            case ADD -> RegisterProgram.ADD;
+            case SUB -> RegisterProgram.SUB;
+            case MUL -> RegisterProgram.MUL;
+            case DIV -> RegisterProgram.DIV;
+            case MOD -> RegisterProgram.MOD;
+            case GT -> RegisterProgram.GT;
+            case LT -> RegisterProgram.LT;
+            case EQ -> RegisterProgram.EQ;
+            case AND -> RegisterProgram.AND;
+            case OR -> RegisterProgram.OR;
+        };
+    }
+
+    private int castType(Type ty) {
+        return Arrays.asList(BytecodeProgram.CAST_TYPES).indexOf(ty);
+    }
+
+    // Emits code that ends the function with the value of e
+    private void compileTail(Expr e) {
+        switch (e) {
+            case ELet el -> {
+                compileInto(el.getSlot(), el.getSubject());
+                compileTail(el.getContinuation());
+            }
+            case ECond ec -> {
+                emit(RegisterProgram.JUMP_IF_FALSE, operand(ec.getTest()), 0);
+                int elseJump = length - 1;
+                compileTail(ec.getThenBranch());
+                code[elseJump] = length;
+                compileTail(ec.getElseBranch());
+            }
+            case EVar ignored -> emit(RegisterProgram.RETURN, operand(e));
+            case EInt ignored -> emit(RegisterProgram.RETURN, operand(e));
+            case EBool ignored -> emit(RegisterProgram.RETURN, operand(e));
+            case EString ignored -> emit(RegisterProgram.RETURN, operand(e));
+            case EUnit ignored -> emit(RegisterProgram.RETURN, operand(e));
+            case EFnCall efc when fnIndices.containsKey(efc.getFnSymbol()) -> {
+                emit(RegisterProgram.TAILCALL, fnIndices.get(efc.getFnSymbol()), efc.getArgs().size());
+                for (Expr arg : efc.getArgs()) {
+                    emit(operand(arg));
+                }
+            }
+            default -> {
+                compileInto(resultRegister, e);
+                emit(RegisterProgram.RETURN, resultRegister);
+            }
+        }
+    }
+
+    // Emits code that leaves the value of e in register dst
+    private void compileInto(int dst, Expr e) {
+        switch (e) {
+            case EVar ignored -> emit(RegisterProgram.MOVE, dst, operand(e));
+            case EInt ignored -> emit(RegisterProgram.MOVE, dst, operand(e));
+            case EBool ignored -> emit(RegisterProgram.MOVE, dst, operand(e));
+            case EString ignored -> emit(RegisterProgram.MOVE, dst, operand(e));
+            case EUnit ignored -> emit(RegisterProgram.UNIT, dst);
+            case EBinOp binOp -> emit(binOpCode(binOp.getOp()), dst,
+                    operand(binOp.getE1()), operand(binOp.getE2()));
+            case ENot en -> emit(RegisterProgram.NOT, dst, operand(en.getExpr()));
+            case ELet el -> {
+                compileInto(el.getSlot(), el.getSubject());
+                compileInto(dst, el.getContinuation());
+            }
+            case ECond ec -> {
+                emit(RegisterProgram.JUMP_IF_FALSE, operand(ec.getTest()), 0);
+                int elseJump = length - 1;
+                compileInto(dst, ec.getThenBranch());
+                emit(RegisterProgram.JUMP, 0);
+                int endJump = length - 1;
+                code[elseJump] = length;
+                compileInto(dst, ec.getElseBranch());
+                code[endJump] = length;
+            }
+            case EFnCall efc -> {
+                Integer index = fnIndices.get(efc.getFnSymbol());
+                if (index == null) {
+                    // Only an error if the call is actually reached, as in Interp
+                    emit(RegisterProgram.UNDEFINED, -1 - constant(new VString(efc.getFnName())));
+                    return;
+                }
+                emit(RegisterProgram.CALL, dst, index, efc.getArgs().size());
+                for (Expr arg : efc.getArgs()) {
+                    emit(operand(arg));
+                }
+            }
+            case EConcat ec -> {
+                emit(RegisterProgram.CONCAT, dst, ec.getExprs().size());
+                for (Expr part : ec.getExprs()) {
+                    emit(operand(part));
+                }
+            }
+            case EPrint ep -> emit(RegisterProgram.PRINT, dst, operand(ep.getExpr()));
+            case EGetInput ignored -> emit(RegisterProgram.GET_INPUT, dst);
+            case ECast ec -> emit(RegisterProgram.CAST, dst, operand(ec.getExpr()), castType(ec.getType()));
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import ast.*;
+
+/*
+ * A program compiled to register bytecode by RegisterCompiler and run by
+ * RegisterVM. As in BytecodeProgram each function is a flat int[] of opcodes
+ * with inline operands, but instead of an operand stack every instruction
+ * names its destination register and source operands directly.
+ *
+ * A source operand is either a register (a non-negative index into the
+ * function's frame) or a constant, encoded as -1 - (constant pool index).
+ * Jump targets are absolute offsets into the function's code.
+ */
+public class RegisterProgram {
+
+    public static final int MOVE = 0;           // dst, src
+    public static final int UNIT = 1;           // dst
+    public static final int ADD = 2;            // dst, left, right
+    public static final int SUB = 3;            // dst, left, right
+    public static final int MUL = 4;            // dst, left, right
+    public static final int DIV = 5;            // dst, left, right
+    public static final int MOD = 6;            // dst, left, right
+    public static final int GT = 7;             // dst, left, right
+    public static final int LT = 8;             // dst, left, right
+    public static final int EQ = 9;             // dst, left, right
+    public static final int AND = 10;           // dst, left, right
+    public static final int OR = 11;            // dst, left, right
+    public static final int NOT = 12;           // dst, src
+    public static final int JUMP = 13;          // target
+    public static final int JUMP_IF_FALSE = 14; // src, target
+    public static final int CALL = 15;          // dst, function index, n, n srcs
+    public static final int RETURN = 16;        // src
+    public static final int CONCAT = 17;        // dst, n, n srcs
+    public static final int PRINT = 18;         // dst, src
+    public static final int GET_INPUT = 19;     // dst
+    public static final int CAST = 20;          // dst, src, index into BytecodeProgram.CAST_TYPES
+    public static final int UNDEFINED = 21;     // src holding the function's name
+    public static final int TAILCALL = 22;      // function index, n, n srcs; replaces the current frame
+
+    private static final String[] NAMES = {
+        "MOVE", "UNIT", "ADD", "SUB", "MUL", "DIV", "MOD", "GT", "LT", "EQ", "AND", "OR", "NOT",
+        "JUMP", "JUMP_IF_FALSE", "CALL", "RETURN", "CONCAT", "PRINT", "GET_INPUT", "CAST", "UNDEFINED",
+        "TAILCALL"
+    };
+
+    // Number of fixed operands following each opcode; CALL, CONCAT and TAILCALL are
+    // followed by as many more as their count operand says
+    private static final int[] OPERANDS = {
+        2, 1, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2,
+        1, 2, 3, 1, 2, 2, 1, 3, 1, 2
+    };
+
+    public static class Function {
+        public final String name;
+        public final int arity;
+        public final int registers;
+        public final int[] code;
+
+        public Function(String name, int arity, int registers, int[] code) {
+            this.name = name;
+            this.arity = arity;
+            this.registers = registers;
+            this.code = code;
+        }
+    }
+
+    private final Function[] functions;
+    private final Function main;
+    private final Value[] constants;
+
+    public RegisterProgram(Function[] functions, Function main, Value[] constants) {
+        this.functions = functions;
+        this.main = main;
+        this.constants = constants;
+    }
+
+    public Function[] getFunctions() {
+        return functions;
+    }
+
+    public Function getMain() {
+        return main;
+    }
+
+    public Value[] getConstants() {
+        return constants;
+    }
+
+    private static String disassemble(Function fn) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s (arity %d, registers %d):%n", fn.name, fn.arity, fn.registers));
+        int pc = 0;
+        while (pc < fn.code.length) {
+            int op = fn.code[pc];
+            int operands = OPERANDS[op];
+            if (op == CALL) {
+                operands += fn.code[pc + 3];
+            } else if (op == CONCAT || op == TAILCALL) {
+                operands += fn.code[pc + 2];
+            }
+            sb.append(String.format("  %4d  %s", pc, NAMES[op]));
+            for (int i = 1; i <= operands; i++) {
+                int operand = fn.code[pc + i];
+                sb.append(' ').append(operand < 0 ? "k" + (-1 - operand) : operand);
+            }
+            sb.append(System.lineSeparator());
+            pc += 1 + operands;
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < constants.length; i++) {
+            sb.append(String.format("k%d: %s%n", i, constants[i]));
+        }
+        for (Function fn : functions) {
+            sb.append(disassemble(fn));
+        }
+        sb.append(disassemble(main));
+        return sb.toString();
+    }
+}
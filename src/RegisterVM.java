@@ -0,0 +1,220 @@
+import ast.*;
+
+import java.util.Arrays;
+
+/*
+ * Runs the register bytecode produced by RegisterCompiler in a single dispatch
+ * loop. Every frame is a window of registers in one Value[] array, starting at
+ * the frame's base. A call copies its arguments into the first registers of a
+ * new window just above the caller's, and on return the result is written to
+ * the caller's destination register. A tail call reuses the caller's window
+ * instead. As in BytecodeVM, return state lives in arrays rather than on the
+ * Java stack.
+ */
+public class RegisterVM {
+
+    private static final int INITIAL_REGISTERS = 1024;
+    private static final int INITIAL_FRAMES = 256;
+
+    private Value[] registers = new Value[INITIAL_REGISTERS];
+
+    // Saved caller state, one entry per active call
+    private RegisterProgram.Function[] callerFns = new RegisterProgram.Function[INITIAL_FRAMES];
+    private int[] callerPcs = new int[INITIAL_FRAMES];
+    private int[] callerBases = new int[INITIAL_FRAMES];
+
+    private void ensureRegisters(int size) {
+        if (size > registers.length) {
+            registers = Arrays.copyOf(registers, Math.max(size, registers.length * 2));
+        }
+    }
+
+    private void ensureFrames(int count) {
+        if (count > callerPcs.length) {
+            int newLength = callerPcs.length * 2;
+            callerFns = Arrays.copyOf(callerFns, newLength);
+            callerPcs = Arrays.copyOf(callerPcs, newLength);
+            callerBases = Arrays.copyOf(callerBases, newLength);
+        }
+    }
+
+    public Value run(RegisterProgram prog) {
+        RegisterProgram.Function[] functions = prog.getFunctions();
+        Value[] k = prog.getConstants();
+
+        RegisterProgram.Function fn = prog.getMain();
+        int[] code = fn.code;
+        int pc = 0;
+        int base = 0;
+        int depth = 0;
+        ensureRegisters(fn.registers);
+        Value[] r = registers;
+
+        while (true) {
+            switch (code[pc]) {
+                case RegisterProgram.MOVE -> {
+                    int src = code[pc + 2];
+                    r[base + code[pc + 1]] = src >= 0 ? r[base + src] : k[-1 - src];
+                    pc += 3;
+                }
+                case RegisterProgram.UNIT -> {
+                    r[base + code[pc + 1]] = VUnit.UNIT;
+                    pc += 2;
+                }
+                case RegisterProgram.ADD, RegisterProgram.SUB, RegisterProgram.MUL -> {
+                    int a = code[pc + 2];
+                    int b = code[pc + 3];
+                    int left = Builtins.unwrapInt(a >= 0 ? r[base + a] : k[-1 - a]);
+                    int right = Builtins.unwrapInt(b >= 0 ? r[base + b] : k[-1 - b]);
+                    int result = switch (code[pc]) {
+                        case RegisterProgram.ADD -> left + right;
+                        case RegisterProgram.SUB -> left - right;
+                        default -> left * right;
+                    };
+                    r[base + code[pc + 1]] = VInt.of(result);
+                    pc += 4;
+                }
+                case RegisterProgram.DIV, RegisterProgram.MOD -> {
+                    int a = code[pc + 2];
+                    int b = code[pc + 3];
+                    r[base + code[pc + 1]] = Builtins.evalBinOp(
+                            code[pc] == RegisterProgram.DIV ? EBinOp.Op.DIV : EBinOp.Op.MOD,
+                            a >= 0 ? r[base + a] : k[-1 - a],
+                            b >= 0 ? r[base + b] : k[-1 - b]);
+                    pc += 4;
+                }
+                case RegisterProgram.GT, RegisterProgram.LT -> {
+                    int a = code[pc + 2];
+                    int b = code[pc + 3];
+                    int left = Builtins.unwrapInt(a >= 0 ? r[base + a] : k[-1 - a]);
+                    int right = Builtins.unwrapInt(b >= 0 ? r[base + b] : k[-1 - b]);
+                    r[base + code[pc + 1]] = VBool.of(code[pc] == RegisterProgram.GT ? left > right : left < right);
+                    pc += 4;
+                }
+                case RegisterProgram.EQ -> {
+                    int a = code[pc + 2];
+                    int b = code[pc + 3];
+                    Value left = a >= 0 ? r[base + a] : k[-1 - a];
+                    Value right = b >= 0 ? r[base + b] : k[-1 - b];
+                    if (left instanceof VInt li && right instanceof VInt ri) {
+                        r[base + code[pc + 1]] = VBool.of(li.getValue() == ri.getValue());
+                    } else {
+                        r[base + code[pc + 1]] = VBool.of(left == right || left.equals(right));
+                    }
+                    pc += 4;
+                }
+                case RegisterProgram.AND, RegisterProgram.OR -> {
+                    int a = code[pc + 2];
+                    int b = code[pc + 3];
+                    boolean left = Builtins.unwrapBool(a >= 0 ? r[base + a] : k[-1 - a]);
+                    boolean right = Builtins.unwrapBool(b >= 0 ? r[base + b] : k[-1 - b]);
+                    r[base + code[pc + 1]] = VBool.of(code[pc] == RegisterProgram.AND ? left && right : left || right);
+                    pc += 4;
+                }
+                case RegisterProgram.NOT -> {
+                    int a = code[pc + 2];
+                    r[base + code[pc + 1]] = VBool.of(!Builtins.unwrapBool(a >= 0 ? r[base + a] : k[-1 - a]));
+                    pc += 3;
+                }
+                case RegisterProgram.JUMP -> pc = code[pc + 1];
+                case RegisterProgram.JUMP_IF_FALSE -> {
+                    int a = code[pc + 1];
+                    pc = Builtins.unwrapBool(a >= 0 ? r[base + a] : k[-1 - a]) ? pc + 3 : code[pc + 2];
+                }
+                case RegisterProgram.CALL -> {
+                    RegisterProgram.Function callee = functions[code[pc + 2]];
+                    int argCount = code[pc + 3];
+                    int newBase = base + fn.registers;
+                    if (newBase + callee.registers > r.length) {
+                        ensureRegisters(newBase + callee.registers);
+                        r = registers;
+                    }
+                    for (int i = 0; i < argCount; i++) {
+                        int a = code[pc + 4 + i];
+                        r[newBase + i] = a >= 0 ? r[base + a] : k[-1 - a];
+                    }
+                    ensureFrames(depth + 1);
+                    callerFns[depth] = fn;
+                    callerPcs[depth] = pc;
+                    callerBases[depth] = base;
+                    depth++;
+                    fn = callee;
+                    code = fn.code;
+                    base = newBase;
+                    pc = 0;
+                }
+                case RegisterProgram.TAILCALL -> {
+                    RegisterProgram.Function callee = functions[code[pc + 1]];
+                    int argCount = code[pc + 2];
+                    // The arguments may be read from the registers they replace, so they
+                    // are staged just above the current window before moving down
+                    int staging = base + fn.registers;
+                    int needed = Math.max(staging + argCount, base + callee.registers);
+                    if (needed > r.length) {
+                        ensureRegisters(needed);
+                        r = registers;
+                    }
+                    for (int i = 0; i < argCount; i++) {
+                        int a = code[pc + 3 + i];
+                        r[staging + i] = a >= 0 ? r[base + a] : k[-1 - a];
+                    }
+                    System.arraycopy(r, staging, r, base, argCount);
+                    fn = callee;
+                    code = fn.code;
+                    pc = 0;
+                }
+                case RegisterProgram.RETURN -> {
+                    int a = code[pc + 1];
+                    Value result = a >= 0 ? r[base + a] : k[-1 - a];
+                    if (depth == 0) {
+                        return result;
+                    }
+                    depth--;
+                    fn = callerFns[depth];
+                    code = fn.code;
+                    pc = callerPcs[depth];
+                    base = callerBases[depth];
+                    // pc is back at the CALL, whose destination register receives the result
+                    r[base + code[pc + 1]] = result;
+                    pc += 4 + code[pc + 3];
+                }
+                case RegisterProgram.CONCAT -> {
+                    int count = code[pc + 2];
+                    VString result = VString.EMPTY;
+                    for (int i = 0; i < count; i++) {
+                        int a = code[pc + 3 + i];
+                        result = Builtins.concat(result, a >= 0 ? r[base + a] : k[-1 - a]);
+                    }
+                    r[base + code[pc + 1]] = result;
+                    pc += 3 + count;
+                }
+                case RegisterProgram.PRINT -> {
+                    int a = code[pc + 2];
+                    Builtins.print(Builtins.unwrapString(a >= 0 ? r[base + a] : k[-1 - a]));
+                    r[base + code[pc + 1]] = VUnit.UNIT;
+                    pc += 3;
+                }
+                case RegisterProgram.GET_INPUT -> {
+                    r[base + code[pc + 1]] = new VString(Builtins.readLine());
+                    pc += 2;
+                }
+                case RegisterProgram.CAST -> {
+                    int a = code[pc + 2];
+                    r[base + code[pc + 1]] = Builtins.castOrFail(a >= 0 ? r[base + a] : k[-1 - a],
+                            BytecodeProgram.CAST_TYPES[code[pc + 3]]);
+                    pc += 4;
+                }
+                case RegisterProgram.UNDEFINED -> {
+                    int a = code[pc + 1];
+                    throw new RuntimeException("Function not defined: " + Builtins.unwrapString(k[-1 - a]));
+                }
+                default -> throw new IllegalStateException("Bad opcode " + code[pc] + " in " + fn.name);
+            }
+        }
+    }
+
+    // Compiles and runs a program
+    public Value runProgram(Program prog) {
+        return run((new RegisterCompiler()).compileProgram(prog));
+    }
+}
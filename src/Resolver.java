@@ -0,0 +1,85 @@
+import ast.*;
+
+/*
+ * Lexical addressing pass, run after typechecking. Every parameter and let
+ * binder gets a slot in a flat frame sized per function: the slot is stored on
+ * each ELet and on each EVar that refers to it, and the frame size is stored on
+ * each FnDef (and on the Program, for the main expression). Parameters take
+ * the first slots in declaration order. A let binder takes the slot just after
+ * the variables already in scope, so binders in disjoint scopes reuse slots.
+ *
+ * The same walk marks every EFnCall in tail position, i.e. whose result is
+ * the result of the enclosing body, so engines can run it without growing
+ * the stack.
+ */
+public class Resolver {
+
+    // Largest frame needed so far by the body being resolved
+    private int frameSize;
+
+    private int resolveBody(Environment<Integer> scope, int depth, Expr body) {
+        frameSize = depth;
+        resolveExpr(scope, depth, body, true);
+        return frameSize;
+    }
+
+    public void resolveDef(FnDef def) {
+        Environment<Integer> scope = new Environment<>();
+        int depth = 0;
+        for (AnnotatedParam param : def.getParams()) {
+            scope = scope.extend(param.symbol, depth++);
+        }
+        def.setFrameSize(resolveBody(scope, depth, def.getBody()));
+    }
+
+    public void resolveProgram(Program p) {
+        for (FnDef fn : p.getFunctionDefs()) {
+            resolveDef(fn);
+        }
+        p.setMainFrameSize(resolveBody(new Environment<>(), 0, p.getMainExpr()));
+    }
+
+    // Given the slots of the variables in scope and how many there are, assigns
+    // slots to every variable occurrence and binder in expression e. tail says
+    // whether e is in tail position of its function body.
+    public void resolveExpr(Environment<Integer> scope, int depth, Expr e, boolean tail) {
+        switch (e) {
+            case EInt ignored -> { }
+            case EBool ignored -> { }
+            case EString ignored -> { }
+            case EUnit ignored -> { }
+            case EGetInput ignored -> { }
+            case EVar ev -> ev.setSlot(scope.lookup(ev.getSymbol()));
+            case EBinOp binOp -> {
+                resolveExpr(scope, depth, binOp.getE1(), false);
+                resolveExpr(scope, depth, binOp.getE2(), false);
+            }
+            case ENot en -> resolveExpr(scope, depth, en.getExpr(), false);
+            case ELet el -> {
+                resolveExpr(scope, depth, el.getSubject(), false);
+                el.setSlot(depth);
+                frameSize = Math.max(frameSize, depth + 1);
+                resolveExpr(scope.extend(el.getBinderSymbol(), depth), depth + 1, el.getContinuation(), tail);
+            }
+            case ECond ec -> {
+                resolveExpr(scope, depth, ec.getTest(), false);
+                resolveExpr(scope, depth, ec.getThenBranch(), tail);
+                resolveExpr(scope, depth, ec.getElseBranch(), tail);
+            }
+            case EFnCall efc -> {
+                efc.setTailCall(tail);
+                for (Expr arg : efc.getArgs()) {
+                    resolveExpr(scope, depth, arg, false);
+                }
+            }
+            case EConcat ec -> {
+                for (Expr expr : ec.getExprs()) {
+                    resolveExpr(scope, depth, expr, false);
+                }
+            }
+            case EPrint ep -> resolveExpr(scope, depth, ep.getExpr(), false);
+            case ECast ec -> resolveExpr(scope, depth, ec.getExpr(), false);
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import ast.*;
+
+import java.util.List;
+
+/*
+ * Builds the tree of self-specializing nodes (see SpecializingNode) for a
+ * resolved program and runs it. Operators, variable reads and casts start out
+ * uninitialized and specialize themselves on the types they observe. Calls
+ * link straight to the callee's Root.
+ */
+public class SpecializingCompiler {
+
+    private final IntMap<SpecializingNode.Root> roots = new IntMap<>();
+
+    public SpecializingNode.Root compileProgram(Program prog) {
+        for (FnDef fn : prog.getFunctionDefs()) {
+            roots.put(fn.getFnSymbol(), new SpecializingNode.Root(fn.getFrameSize()));
+        }
+        for (FnDef fn : prog.getFunctionDefs()) {
+            roots.get(fn.getFnSymbol()).setBody(compileExpr(fn.getBody()));
+        }
+        SpecializingNode.Root main = new SpecializingNode.Root(prog.getMainFrameSize());
+        main.setBody(compileExpr(prog.getMainExpr()));
+        return main;
+    }
+
+    // Compiles and runs a program that has already been through the Resolver
+    public Value runProgram(Program prog) {
+        SpecializingNode.Root main = compileProgram(prog);
+        return main.execute(new Value[main.getFrameSize()]);
+    }
+
+    public SpecializingNode compileExpr(Expr e) {
+        return switch (e) {
+            case EInt ei -> new SpecializingNode.IntConst(ei.getValue());
+            case EBool eb -> new SpecializingNode.BoolConst(eb.getValue());
+            case EString es -> new SpecializingNode.StringConst(es.getValue());
+            case EUnit ignored -> new SpecializingNode.UnitConst();
+            case EVar ev -> new SpecializingNode.UninitLocal(ev.getSlot());
+            case EBinOp binOp -> new SpecializingNode.UninitBinOp(binOp.getOp(),
+                    compileExpr(binOp.getE1()), compileExpr(binOp.getE2()));
+            case ENot en -> new SpecializingNode.Not(compileExpr(en.getExpr()));
+            case ELet el -> new SpecializingNode.Let(el.getSlot(),
+                    compileExpr(el.getSubject()), compileExpr(el.getContinuation()));
+            case ECond ec -> new SpecializingNode.Cond(compileExpr(ec.getTest()),
+                    compileExpr(ec.getThenBranch()), compileExpr(ec.getElseBranch()));
+            case EFnCall efc -> new SpecializingNode.Call(efc.getFnName(),
+                    roots.get(efc.getFnSymbol()), compileAll(efc.getArgs()));
+            case EConcat ec -> new SpecializingNode.Concat(compileAll(ec.getExprs()));
+            case EPrint ep -> new SpecializingNode.Print(compileExpr(ep.getExpr()));
+            case EGetInput ignored -> new SpecializingNode.GetInput();
+            case ECast ec -> new SpecializingNode.UninitCast(ec.getType(), compileExpr(ec.getExpr()));
+            default -> throw new RuntimeException("Unrecognized expression type: " + e);
+        };
+    }
+
+    private List<SpecializingNode> compileAll(List<Expr> exprs) {
+        return exprs.stream().map(this::compileExpr).toList();
+    }
+}
@@ -0,0 +1,906 @@
+import ast.*;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+ * Nodes of the self-specializing AST engine. A node starts out uninitialized,
+ * runs generically for its first few executions while recording the types of
+ * the values it sees, and then replaces itself in its parent with a node
+ * specialized to those types. Specialized nodes pass ints and bools between
+ * each other through executeInt/executeBool without boxing, and never go
+ * through the instanceof checks in Builtins.unwrapInt/unwrapBool.
+ *
+ * In a typechecked program a node only ever sees the types it specialized on.
+ * Without typechecking a child can still produce something else; it then
+ * throws UnexpectedResult, and the specialized node replaces itself with its
+ * generic version, which behaves exactly like Interp.
+ */
+public abstract class SpecializingNode {
+
+    // Thrown by executeInt/executeBool when the node produced a value of another
+    // type; it never leaves the engine, so it is never serialized
+    @SuppressWarnings("serial")
+    static final class UnexpectedResult extends RuntimeException {
+        final Value value;
+
+        UnexpectedResult(Value value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    // Number of executions an uninitialized node observes before rewriting itself
+    static final int SPECIALIZE_AFTER = 2;
+
+    private SpecializingNode parent;
+
+    public abstract Value execute(Value[] frame);
+
+    public int executeInt(Value[] frame) throws UnexpectedResult {
+        Value v = execute(frame);
+        if (v instanceof VInt vi) {
+            return vi.getValue();
+        }
+        throw new UnexpectedResult(v);
+    }
+
+    public boolean executeBool(Value[] frame) throws UnexpectedResult {
+        Value v = execute(frame);
+        if (v instanceof VBool vb) {
+            return vb.getValue();
+        }
+        throw new UnexpectedResult(v);
+    }
+
+    // Runs a node whose value must be a bool, reporting anything else as a runtime type error
+    protected static boolean testBool(SpecializingNode node, Value[] frame) {
+        try {
+            return node.executeBool(frame);
+        } catch (UnexpectedResult ex) {
+            return Builtins.unwrapBool(ex.value);
+        }
+    }
+
+    protected <T extends SpecializingNode> T adopt(T child) {
+        ((SpecializingNode) child).parent = this;
+        return child;
+    }
+
+    protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no children to replace");
+    }
+
+    // Swaps this node for the one built by replacement. A recursive call can reach the
+    // same node while an outer execution of it is still running, so the node may already
+    // have been swapped out; the replacement is then neither built nor installed.
+    protected void replace(Supplier<? extends SpecializingNode> replacement) {
+        if (parent == null) {
+            return;
+        }
+        SpecializingNode newNode = replacement.get();
+        parent.replaceChild(this, newNode);
+        newNode.parent = parent;
+        parent = null;
+    }
+
+    // Holds the body of a function (or the main expression) and the size of its frame
+    public static final class Root extends SpecializingNode {
+        private final int frameSize;
+        private SpecializingNode body;
+
+        public Root(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setBody(SpecializingNode body) {
+            this.body = adopt(body);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return body.execute(frame);
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            return body.executeInt(frame);
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            return body.executeBool(frame);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (body == oldChild) {
+                body = newChild;
+            }
+        }
+    }
+
+    // Constants
+
+    public static final class IntConst extends SpecializingNode {
+        private final int value;
+        private final VInt boxed;
+
+        public IntConst(int value) {
+            this.value = value;
+            this.boxed = VInt.of(value);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return boxed;
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            return value;
+        }
+    }
+
+    public static final class BoolConst extends SpecializingNode {
+        private final boolean value;
+
+        public BoolConst(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VBool.of(value);
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            return value;
+        }
+    }
+
+    public static final class StringConst extends SpecializingNode {
+        private final VString value;
+
+        public StringConst(String value) {
+            this.value = new VString(value);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return value;
+        }
+    }
+
+    public static final class UnitConst extends SpecializingNode {
+        @Override
+        public Value execute(Value[] frame) {
+            return VUnit.UNIT;
+        }
+    }
+
+    // Variables
+
+    public static final class UninitLocal extends SpecializingNode {
+        private final int slot;
+
+        public UninitLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Value v = frame[slot];
+            if (v instanceof VInt) {
+                replace(() -> new IntLocal(slot));
+            } else if (v instanceof VBool) {
+                replace(() -> new BoolLocal(slot));
+            } else {
+                replace(() -> new GenericLocal(slot));
+            }
+            return v;
+        }
+    }
+
+    public static final class IntLocal extends SpecializingNode {
+        private final int slot;
+
+        IntLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return frame[slot];
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            Value v = frame[slot];
+            if (v instanceof VInt vi) {
+                return vi.getValue();
+            }
+            replace(() -> new GenericLocal(slot));
+            throw new UnexpectedResult(v);
+        }
+    }
+
+    public static final class BoolLocal extends SpecializingNode {
+        private final int slot;
+
+        BoolLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return frame[slot];
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            Value v = frame[slot];
+            if (v instanceof VBool vb) {
+                return vb.getValue();
+            }
+            replace(() -> new GenericLocal(slot));
+            throw new UnexpectedResult(v);
+        }
+    }
+
+    public static final class GenericLocal extends SpecializingNode {
+        private final int slot;
+
+        GenericLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return frame[slot];
+        }
+    }
+
+    public static final class Let extends SpecializingNode {
+        private final int slot;
+        private SpecializingNode subject;
+        private SpecializingNode continuation;
+
+        public Let(int slot, SpecializingNode subject, SpecializingNode continuation) {
+            this.slot = slot;
+            this.subject = adopt(subject);
+            this.continuation = adopt(continuation);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            frame[slot] = subject.execute(frame);
+            return continuation.execute(frame);
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            frame[slot] = subject.execute(frame);
+            return continuation.executeInt(frame);
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            frame[slot] = subject.execute(frame);
+            return continuation.executeBool(frame);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (subject == oldChild) {
+                subject = newChild;
+            } else if (continuation == oldChild) {
+                continuation = newChild;
+            }
+        }
+    }
+
+    // Control flow and calls
+
+    public static final class Cond extends SpecializingNode {
+        private SpecializingNode test;
+        private SpecializingNode thenBranch;
+        private SpecializingNode elseBranch;
+
+        public Cond(SpecializingNode test, SpecializingNode thenBranch, SpecializingNode elseBranch) {
+            this.test = adopt(test);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return testBool(test, frame) ? thenBranch.execute(frame) : elseBranch.execute(frame);
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            return testBool(test, frame) ? thenBranch.executeInt(frame) : elseBranch.executeInt(frame);
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            return testBool(test, frame) ? thenBranch.executeBool(frame) : elseBranch.executeBool(frame);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (test == oldChild) {
+                test = newChild;
+            } else if (thenBranch == oldChild) {
+                thenBranch = newChild;
+            } else if (elseBranch == oldChild) {
+                elseBranch = newChild;
+            }
+        }
+    }
+
+    public static final class Call extends SpecializingNode {
+        private final String fnName;
+        private final Root target;
+        private final SpecializingNode[] args;
+
+        // A null target is a call to an undefined function, reported only if reached
+        public Call(String fnName, Root target, List<SpecializingNode> args) {
+            this.fnName = fnName;
+            this.target = target;
+            this.args = new SpecializingNode[args.size()];
+            for (int i = 0; i < this.args.length; i++) {
+                this.args[i] = adopt(args.get(i));
+            }
+        }
+
+        // Parameters occupy the first slots of the callee's frame
+        private Value[] calleeFrame(Value[] frame) {
+            if (target == null) throw new RuntimeException("Function not defined: " + fnName);
+            Value[] newFrame = new Value[target.getFrameSize()];
+            for (int i = 0; i < args.length; i++) {
+                newFrame[i] = args[i].execute(frame);
+            }
+            return newFrame;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return target.execute(calleeFrame(frame));
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            return target.executeInt(calleeFrame(frame));
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            return target.executeBool(calleeFrame(frame));
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] == oldChild) {
+                    args[i] = newChild;
+                }
+            }
+        }
+    }
+
+    // Strings and I/O
+
+    public static final class Concat extends SpecializingNode {
+        private final SpecializingNode[] parts;
+
+        public Concat(List<SpecializingNode> parts) {
+            this.parts = new SpecializingNode[parts.size()];
+            for (int i = 0; i < this.parts.length; i++) {
+                this.parts[i] = adopt(parts.get(i));
+            }
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            VString result = VString.EMPTY;
+            for (SpecializingNode part : parts) {
+                result = Builtins.concat(result, part.execute(frame));
+            }
+            return result;
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] == oldChild) {
+                    parts[i] = newChild;
+                }
+            }
+        }
+    }
+
+    public static final class Print extends SpecializingNode {
+        private SpecializingNode expr;
+
+        public Print(SpecializingNode expr) {
+            this.expr = adopt(expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Builtins.print(Builtins.unwrapString(expr.execute(frame)));
+            return VUnit.UNIT;
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (expr == oldChild) {
+                expr = newChild;
+            }
+        }
+    }
+
+    public static final class GetInput extends SpecializingNode {
+        @Override
+        public Value execute(Value[] frame) {
+            return new VString(Builtins.readLine());
+        }
+    }
+
+    // Operators
+
+    public static final class Not extends SpecializingNode {
+        private SpecializingNode expr;
+
+        public Not(SpecializingNode expr) {
+            this.expr = adopt(expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VBool.of(executeBool(frame));
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            return !testBool(expr, frame);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (expr == oldChild) {
+                expr = newChild;
+            }
+        }
+    }
+
+    public abstract static class BinaryNode extends SpecializingNode {
+        protected final EBinOp.Op op;
+        protected SpecializingNode left;
+        protected SpecializingNode right;
+
+        BinaryNode(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            this.op = op;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        // Replaces this node with the generic version after an operand produced a value of an
+        // unexpected type, and finishes the operation generically. rightValue is null if the
+        // right operand has not been evaluated yet.
+        protected Value despecialize(Value[] frame, Value leftValue, Value rightValue) {
+            replace(() -> new GenericBinOp(op, left, right));
+            if (rightValue == null) {
+                rightValue = right.execute(frame);
+            }
+            return Builtins.evalBinOp(op, leftValue, rightValue);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (left == oldChild) {
+                left = newChild;
+            } else if (right == oldChild) {
+                right = newChild;
+            }
+        }
+    }
+
+    public static final class UninitBinOp extends BinaryNode {
+        private int executions = 0;
+        private Class<?> leftType;
+        private Class<?> rightType;
+        private boolean polymorphic = false;
+
+        public UninitBinOp(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            super(op, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Value l = left.execute(frame);
+            Value r = right.execute(frame);
+            Value result = Builtins.evalBinOp(op, l, r);
+            if (executions++ == 0) {
+                leftType = l.getClass();
+                rightType = r.getClass();
+            } else if (l.getClass() != leftType || r.getClass() != rightType) {
+                polymorphic = true;
+            }
+            if (executions >= SPECIALIZE_AFTER) {
+                replace(this::specialize);
+            }
+            return result;
+        }
+
+        private BinaryNode specialize() {
+            boolean ints = !polymorphic && leftType == VInt.class && rightType == VInt.class;
+            boolean bools = !polymorphic && leftType == VBool.class && rightType == VBool.class;
+            boolean strings = !polymorphic && leftType == VString.class && rightType == VString.class;
+            return switch (op) {
+                case ADD, SUB, MUL, DIV, MOD -> ints ? new IntArith(op, left, right) : generic();
+                case GT, LT -> ints ? new IntCompare(op, left, right) : generic();
+                case EQ -> ints ? new IntCompare(op, left, right)
+                        : bools ? new BoolLogic(op, left, right)
+                        : strings ? new StringEq(left, right)
+                        : generic();
+                case AND, OR -> bools ? new BoolLogic(op, left, right) : generic();
+            };
+        }
+
+        private BinaryNode generic() {
+            return new GenericBinOp(op, left, right);
+        }
+    }
+
+    public static final class GenericBinOp extends BinaryNode {
+        GenericBinOp(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            super(op, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Value l = left.execute(frame);
+            return Builtins.evalBinOp(op, l, right.execute(frame));
+        }
+    }
+
+    public static final class IntArith extends BinaryNode {
+        IntArith(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            super(op, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VInt.of(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            int l;
+            try {
+                l = left.executeInt(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapInt(despecialize(frame, ex.value, null));
+            }
+            int r;
+            try {
+                r = right.executeInt(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapInt(despecialize(frame, VInt.of(l), ex.value));
+            }
+            return switch (op) {
+                case ADD -> l + r;
+                case SUB -> l - r;
+                case MUL -> l * r;
+                case DIV -> {
+                    if (r == 0) throw new RuntimeException("Division by zero");
+                    yield l / r;
+                }
+                case MOD -> {
+                    if (r == 0) throw new RuntimeException("Modulo by zero");
+                    yield l % r;
+                }
+                default -> throw new IllegalStateException("Not an arithmetic operator: " + op);
+            };
+        }
+    }
+
+    public static final class IntCompare extends BinaryNode {
+        IntCompare(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            super(op, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VBool.of(executeBool(frame));
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            int l;
+            try {
+                l = left.executeInt(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapBool(despecialize(frame, ex.value, null));
+            }
+            int r;
+            try {
+                r = right.executeInt(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapBool(despecialize(frame, VInt.of(l), ex.value));
+            }
+            return switch (op) {
+                case GT -> l > r;
+                case LT -> l < r;
+                case EQ -> l == r;
+                default -> throw new IllegalStateException("Not an int comparison: " + op);
+            };
+        }
+    }
+
+    // Both operands are always evaluated, as in Interp
+    public static final class BoolLogic extends BinaryNode {
+        BoolLogic(EBinOp.Op op, SpecializingNode left, SpecializingNode right) {
+            super(op, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VBool.of(executeBool(frame));
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            boolean l;
+            try {
+                l = left.executeBool(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapBool(despecialize(frame, ex.value, null));
+            }
+            boolean r;
+            try {
+                r = right.executeBool(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapBool(despecialize(frame, VBool.of(l), ex.value));
+            }
+            return switch (op) {
+                case AND -> l && r;
+                case OR -> l || r;
+                case EQ -> l == r;
+                default -> throw new IllegalStateException("Not a bool operator: " + op);
+            };
+        }
+    }
+
+    public static final class StringEq extends BinaryNode {
+        StringEq(SpecializingNode left, SpecializingNode right) {
+            super(EBinOp.Op.EQ, left, right);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VBool.of(executeBool(frame));
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            Value l = left.execute(frame);
+            Value r = right.execute(frame);
+            if (l instanceof VString ls && r instanceof VString rs) {
+                return ls.getValue().equals(rs.getValue());
+            }
+            return Builtins.unwrapBool(despecialize(frame, l, r));
+        }
+    }
+
+    // Casts
+
+    public abstract static class CastNode extends SpecializingNode {
+        protected final Type type;
+        protected SpecializingNode expr;
+
+        CastNode(Type type, SpecializingNode expr) {
+            this.type = type;
+            this.expr = adopt(expr);
+        }
+
+        // Replaces this node with the generic version after the operand produced a value
+        // of an unexpected type, and finishes the cast generically
+        protected Value despecialize(Value v) {
+            replace(() -> new GenericCast(type, expr));
+            return Builtins.castOrFail(v, type);
+        }
+
+        @Override
+        protected void replaceChild(SpecializingNode oldChild, SpecializingNode newChild) {
+            if (expr == oldChild) {
+                expr = newChild;
+            }
+        }
+    }
+
+    public static final class UninitCast extends CastNode {
+        private int executions = 0;
+        private Class<?> sourceType;
+        private boolean polymorphic = false;
+
+        public UninitCast(Type type, SpecializingNode expr) {
+            super(type, expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Value v = expr.execute(frame);
+            Value result = Builtins.castOrFail(v, type);
+            if (executions++ == 0) {
+                sourceType = v.getClass();
+            } else if (v.getClass() != sourceType) {
+                polymorphic = true;
+            }
+            if (executions >= SPECIALIZE_AFTER) {
+                replace(this::specialize);
+            }
+            return result;
+        }
+
+        private CastNode specialize() {
+            if (polymorphic) {
+                return new GenericCast(type, expr);
+            }
+            if (type == TyString.type() && sourceType == VInt.class) {
+                return new IntToString(expr);
+            } else if (type == TyString.type() && sourceType == VBool.class) {
+                return new BoolToString(expr);
+            } else if (type == TyInt.type() && sourceType == VString.class) {
+                return new StringToInt(expr);
+            } else if (type == TyInt.type() && sourceType == VBool.class) {
+                return new BoolToInt(expr);
+            } else if ((type == TyInt.type() && sourceType == VInt.class)
+                    || (type == TyBool.type() && sourceType == VBool.class)
+                    || (type == TyString.type() && sourceType == VString.class)) {
+                return new IdentityCast(type, expr, sourceType);
+            }
+            return new GenericCast(type, expr);
+        }
+    }
+
+    public static final class GenericCast extends CastNode {
+        GenericCast(Type type, SpecializingNode expr) {
+            super(type, expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return Builtins.castOrFail(expr.execute(frame), type);
+        }
+    }
+
+    public static final class IdentityCast extends CastNode {
+        private final Class<?> valueType;
+
+        IdentityCast(Type type, SpecializingNode expr, Class<?> valueType) {
+            super(type, expr);
+            this.valueType = valueType;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            Value v = expr.execute(frame);
+            return v.getClass() == valueType ? v : despecialize(v);
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            try {
+                return expr.executeInt(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapInt(despecialize(ex.value));
+            }
+        }
+
+        @Override
+        public boolean executeBool(Value[] frame) {
+            try {
+                return expr.executeBool(frame);
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapBool(despecialize(ex.value));
+            }
+        }
+    }
+
+    public static final class IntToString extends CastNode {
+        IntToString(SpecializingNode expr) {
+            super(TyString.type(), expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            try {
+                return new VString(Integer.toString(expr.executeInt(frame)));
+            } catch (UnexpectedResult ex) {
+                return despecialize(ex.value);
+            }
+        }
+    }
+
+    public static final class BoolToString extends CastNode {
+        BoolToString(SpecializingNode expr) {
+            super(TyString.type(), expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            try {
+                return new VString(expr.executeBool(frame) ? "true" : "false");
+            } catch (UnexpectedResult ex) {
+                return despecialize(ex.value);
+            }
+        }
+    }
+
+    public static final class BoolToInt extends CastNode {
+        BoolToInt(SpecializingNode expr) {
+            super(TyInt.type(), expr);
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VInt.of(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            try {
+                return expr.executeBool(frame) ? 1 : 0;
+            } catch (UnexpectedResult ex) {
+                return Builtins.unwrapInt(despecialize(ex.value));
+            }
+        }
+    }
+
+    public static final class StringToInt extends CastNode {
+        StringToInt(SpecializingNode expr) {
+            super(TyInt.type(), expr);
+        }
+
+        // Same test as the "-?\d+" pattern Builtins.cast uses, without the regex engine
+        private static boolean isIntLiteral(String s) {
+            int start = s.startsWith("-") ? 1 : 0;
+            if (s.length() == start) {
+                return false;
+            }
+            for (int i = start; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Value execute(Value[] frame) {
+            return VInt.of(executeInt(frame));
+        }
+
+        @Override
+        public int executeInt(Value[] frame) {
+            Value v = expr.execute(frame);
+            if (v instanceof VString vs) {
+                if (isIntLiteral(vs.getValue())) {
+                    return Integer.parseInt(vs.getValue());
+                }
+                return Builtins.unwrapInt(Builtins.castOrFail(v, type));
+            }
+            return Builtins.unwrapInt(despecialize(v));
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Splits Diggleby source into the tokens of Diggleby.g4, one at a time, for
+ * RecursiveDescentParser. Keywords (including the type names) win over
+ * identifiers of the same text, and the longest match wins otherwise, as in
+ * the ANTLR lexer. The current token is described by kind, its start and end
+ * offsets in the source, and the line and column it starts at; nothing is
+ * allocated per token except the text of the ones asked for.
+ *
+ * Text that doesn't match a token is skipped the way the ANTLR lexer recovers:
+ * everything from where the token started through the character it failed on
+ * is reported as a token recognition error, on stderr, and lexing goes on.
+ */
+public final class Tokenizer {
+
+    static final int EOF = 0;
+    static final int INT = 1;
+    static final int STR = 2;
+    static final int IDENT = 3;
+    static final int DEF = 4;
+    static final int TRUE = 5;
+    static final int FALSE = 6;
+    static final int LET = 7;
+    static final int IN = 8;
+    static final int CONCAT = 9;
+    static final int IF = 10;
+    static final int THEN = 11;
+    static final int ELSE = 12;
+    static final int PRINT = 13;
+    static final int GETINPUT = 14;
+    static final int TY_BOOL = 15;
+    static final int TY_INT = 16;
+    static final int TY_STRING = 17;
+    static final int TY_UNIT = 18;
+    static final int COMMA = 19;
+    static final int PLUS = 20;
+    static final int MINUS = 21;
+    static final int MUL = 22;
+    static final int DIV = 23;
+    static final int MOD = 24;
+    static final int GT = 25;
+    static final int LT = 26;
+    static final int EQQ = 27;
+    static final int EQ = 28;
+    static final int AND = 29;
+    static final int OR = 30;
+    static final int XOR = 31;
+    static final int NOT = 32;
+    static final int COLON = 33;
+    static final int LPAREN = 34;
+    static final int RPAREN = 35;
+    static final int LBRACE = 36;
+    static final int RBRACE = 37;
+    // Only seen inside next(), for text that was skipped
+    private static final int ERROR = -1;
+
+    private final String source;
+    private int pos;
+    private int line;
+    private int lineStart;
+    private final boolean reportErrors;
+    // How many token recognition errors there have been
+    int errorCount = 0;
+
+    // The current token
+    int kind;
+    int start;
+    int end;
+    int tokenLine;
+    int tokenColumn;
+
+    public Tokenizer(String source) {
+        this(source, 0, 1, 0, true);
+    }
+
+    // Starts at offset start, which is on the given line; lineStart is the
+    // offset that line starts at, so columns come out as they would from 0.
+    // Errors are only counted, since ParallelFrontEnd parses a source that
+    // has any again as a whole, and that parse reports them.
+    public Tokenizer(String source, int start, int line, int lineStart) {
+        this(source, start, line, lineStart, false);
+    }
+
+    private Tokenizer(String source, int start, int line, int lineStart, boolean reportErrors) {
+        this.source = source;
+        this.pos = start;
+        this.line = line;
+        this.lineStart = lineStart;
+        this.reportErrors = reportErrors;
+        next();
+    }
+
+    public String text() {
+        return source.substring(start, end);
+    }
+
+    // Describes the current token for error messages, as ANTLR does
+    public String describe() {
+        return kind == EOF ? "<EOF>" : "'" + text() + "'";
+    }
+
+    public RuntimeException error(String message) {
+        return new RuntimeException("line " + tokenLine + ":" + tokenColumn + " " + message);
+    }
+
+    // Moves on to the next token, skipping any text that doesn't match one
+    public void next() {
+        while (!scan()) {
+            errorCount++;
+            if (reportErrors) {
+                System.err.println("line " + tokenLine + ":" + tokenColumn + " token recognition error at: '"
+                        + errorDisplay(source.substring(start, end)) + "'");
+            }
+        }
+    }
+
+    // Scans one token, or returns false if the text from start to end (which
+    // has been skipped) doesn't match one
+    private boolean scan() {
+        skipWhitespace();
+        start = pos;
+        tokenLine = line;
+        tokenColumn = pos - lineStart;
+        if (pos == source.length()) {
+            kind = EOF;
+            end = pos;
+            return true;
+        }
+        char c = source.charAt(pos++);
+        kind = switch (c) {
+            case ',' -> COMMA;
+            case '+' -> PLUS;
+            case '-' -> MINUS;
+            case '*' -> MUL;
+            case '/' -> DIV;
+            case '%' -> MOD;
+            case '>' -> GT;
+            case '<' -> LT;
+            case '^' -> XOR;
+            case '!' -> NOT;
+            case ':' -> COLON;
+            case '(' -> LPAREN;
+            case ')' -> RPAREN;
+            case '{' -> LBRACE;
+            case '}' -> RBRACE;
+            case '=' -> accept('=') ? EQQ : EQ;
+            case '&' -> accept('&') ? AND : skipFailed();
+            case '|' -> accept('|') ? OR : skipFailed();
+            case '"' -> scanString() ? STR : ERROR;
+            default -> {
+                if (c >= '0' && c <= '9') {
+                    while (pos < source.length() && isDigit(source.charAt(pos))) {
+                        pos++;
+                    }
+                    yield INT;
+                }
+                if (isLetter(c)) {
+                    while (pos < source.length() && (isLetter(source.charAt(pos)) || isDigit(source.charAt(pos)))) {
+                        pos++;
+                    }
+                    yield keywordOrIdent(source.substring(start, pos));
+                }
+                yield ERROR;
+            }
+        };
+        end = pos;
+        return kind != ERROR;
+    }
+
+    private void skipWhitespace() {
+        while (pos < source.length()) {
+            char c = source.charAt(pos);
+            if (c == '\n') {
+                line++;
+                lineStart = pos + 1;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean accept(char c) {
+        if (pos < source.length() && source.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    // A token that was partly matched fails on the character after it, which
+    // ANTLR skips along with the rest
+    private int skipFailed() {
+        if (pos < source.length()) {
+            if (source.charAt(pos) == '\n') {
+                line++;
+                lineStart = pos + 1;
+            }
+            pos++;
+        }
+        return ERROR;
+    }
+
+    // Scans the rest of a string literal, returning false if the source ends
+    // first; a backslash takes the next character with it, but escapes are
+    // left as they are, as in the ANTLR front end
+    private boolean scanString() {
+        while (pos < source.length()) {
+            char c = source.charAt(pos++);
+            if (c == '"') {
+                return true;
+            }
+            if (c == '\\' && pos < source.length()) {
+                c = source.charAt(pos++);
+            }
+            if (c == '\n') {
+                line++;
+                lineStart = pos;
+            }
+        }
+        return false;
+    }
+
+    // Shows line breaks and tabs escaped, as ANTLR's error messages do
+    private static String errorDisplay(String text) {
+        return text.replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int keywordOrIdent(String word) {
+        return switch (word) {
+            case "def" -> DEF;
+            case "true" -> TRUE;
+            case "false" -> FALSE;
+            case "let" -> LET;
+            case "in" -> IN;
+            case "concat" -> CONCAT;
+            case "if" -> IF;
+            case "then" -> THEN;
+            case "else" -> ELSE;
+            case "print" -> PRINT;
+            case "getInput" -> GETINPUT;
+            case "Bool" -> TY_BOOL;
+            case "Int" -> TY_INT;
+            case "String" -> TY_STRING;
+            case "Unit" -> TY_UNIT;
+            default -> IDENT;
+        };
+    }
+}
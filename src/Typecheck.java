@@ -1,5 +1,5 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import ast.*;
 
@@ -11,35 +11,74 @@ public class Typecheck {
         }
     }
 
-    public void typecheckDef(Map<String, FnDef> defs, FnDef def) {
+    public void typecheckDef(IntMap<FnDef> defs, FnDef def) {
         Environment<Type> paramEnv = new Environment<>();
         for (AnnotatedParam param : def.getParams()) {
-            paramEnv = paramEnv.extend(param.param, param.type);
+            paramEnv = paramEnv.extend(param.symbol, param.type);
         }
         Type bodyType = typecheckExpr(defs, paramEnv, def.getBody());
         checkType(def.getReturnType(), bodyType);
     }
 
-    public Type typecheckProgram(Program p) {
-        Map<String, FnDef> functionMap = new HashMap<>();
+    // Checks the whole program, recording the static type of every expression
+    // and the definition called by every EFnCall on the nodes themselves.
+    // Returns the program, whose main expression's type is the program's type.
+    public Program typecheckProgram(Program p) {
+        IntMap<FnDef> functionMap = functionMap(p);
         for (FnDef fn : p.getFunctionDefs()) {
-            functionMap.put(fn.getFnName(), fn);
+            typecheckDef(functionMap, fn);
         }
+        typecheckExpr(functionMap, new Environment<>(), p.getMainExpr());
+        return p;
+    }
+
+    // As typecheckProgram, but checks the functions in parallel
+    public Program typecheckProgramParallel(Program p) {
+        IntMap<FnDef> functionMap = functionMap(p);
+        typecheckDefsParallel(functionMap, p.getFunctionDefs());
+        typecheckExpr(functionMap, new Environment<>(), p.getMainExpr());
+        return p;
+    }
+
+    // Checks the given functions in parallel. A function's check only reads
+    // the map of definitions and only annotates that function's own nodes.
+    // The functions that failed are checked again in order on this thread, so
+    // the error is the one checking them in sequence gives (and deep nesting
+    // that overflowed a worker's smaller stack gets the main thread's).
+    public void typecheckDefsParallel(IntMap<FnDef> functionMap, List<FnDef> defs) {
+        boolean[] failed = new boolean[defs.size()];
+        IntStream.range(0, defs.size()).parallel().forEach(i -> {
+            try {
+                typecheckDef(functionMap, defs.get(i));
+            } catch (RuntimeException | StackOverflowError ex) {
+                failed[i] = true;
+            }
+        });
+        for (int i = 0; i < failed.length; i++) {
+            if (failed[i]) {
+                typecheckDef(functionMap, defs.get(i));
+            }
+        }
+    }
+
+    // A later definition of a name replaces an earlier one
+    static IntMap<FnDef> functionMap(Program p) {
+        IntMap<FnDef> functionMap = new IntMap<>(p.getFunctionDefs().size());
         for (FnDef fn : p.getFunctionDefs()) {
-            typecheckDef(functionMap, fn);
+            functionMap.put(fn.getFnSymbol(), fn);
         }
-        return typecheckExpr(functionMap, new Environment<>(), p.getMainExpr());
+        return functionMap;
     }
 
 
 
-    public Type typecheckExpr(Map<String, FnDef> fnDefs, Environment<Type> tyEnv, Expr e) {
-        return switch (e) {
+    public Type typecheckExpr(IntMap<FnDef> fnDefs, Environment<Type> tyEnv, Expr e) {
+        Type type = switch (e) {
             case EInt ignored -> TyInt.type();
             case EBool ignored -> TyBool.type();
             case EString ignored -> TyString.type();
             case EUnit ignored -> TyUnit.type();
-            case EVar ev -> tyEnv.lookup(ev.getVar());
+            case EVar ev -> tyEnv.lookup(ev.getSymbol());
             case EBinOp binOp -> {
                 Type leftType = typecheckExpr(fnDefs, tyEnv, binOp.getE1());
                 Type rightType = typecheckExpr(fnDefs, tyEnv, binOp.getE2());
@@ -73,7 +112,7 @@ public class Typecheck {
             }
             case ELet el -> {
                 Type boundType = typecheckExpr(fnDefs, tyEnv, el.getSubject());
-                Environment<Type> newEnv = tyEnv.extend(el.getBinder(), boundType);
+                Environment<Type> newEnv = tyEnv.extend(el.getBinderSymbol(), boundType);
                 yield typecheckExpr(fnDefs, newEnv, el.getContinuation());
             }
             case ECond ec -> {
@@ -85,7 +124,7 @@ public class Typecheck {
                 yield thenType;
             }
             case EFnCall efc -> {
-                FnDef fn = fnDefs.get(efc.getFnName());
+                FnDef fn = fnDefs.get(efc.getFnSymbol());
                 if (fn == null) {
                     throw new TypeErrorException("Undefined function: " + efc.getFnName());
                 }
@@ -97,6 +136,7 @@ public class Typecheck {
                     Type actual = typecheckExpr(fnDefs, tyEnv, efc.getArgs().get(i));
                     checkType(expected, actual);
                 }
+                efc.setFnDef(fn);
                 yield fn.getReturnType();
             }
             case EConcat ec -> {
@@ -116,5 +156,7 @@ public class Typecheck {
             }
             default -> throw new TypeErrorException("Bad type not recognised: " + e);
         };
+        e.setStaticType(type);
+        return type;
     }
 }
@@ -2,9 +2,11 @@ package ast;
 
 public class AnnotatedParam {
     public String param;
+    public int symbol;
     public Type type;
     public AnnotatedParam(String param, Type type) {
         this.param = param;
+        this.symbol = Symbols.intern(param);
         this.type = type;
     }
 }
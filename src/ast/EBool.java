@@ -4,6 +4,7 @@ public class EBool extends Expr {
 
     private boolean value;
     public boolean getValue() { return value; }
+    public VBool asValue() { return VBool.of(value); }
 
     public EBool(boolean value) {
         this.value = value;
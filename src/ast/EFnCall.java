@@ -5,10 +5,16 @@ import java.util.List;
 
 public class EFnCall extends Expr {
     private String fnName;
+    private int fnSymbol;
     private List<Expr> args;
-    
+    // Whether the call is in tail position of its function body; set by the resolver
+    private boolean tailCall;
+    // The called definition, found by the typechecker; null if it hasn't run
+    private FnDef fnDef;
+
     public EFnCall(String fnName, List<Expr> args) {
         this.fnName = fnName;
+        this.fnSymbol = Symbols.intern(fnName);
         this.args = args;
     }
 
@@ -16,10 +22,30 @@ public class EFnCall extends Expr {
         return fnName;
     }
 
+    public int getFnSymbol() {
+        return fnSymbol;
+    }
+
     public List<Expr> getArgs() {
         return args;
     }
 
+    public boolean isTailCall() {
+        return tailCall;
+    }
+
+    public void setTailCall(boolean tailCall) {
+        this.tailCall = tailCall;
+    }
+
+    public FnDef getFnDef() {
+        return fnDef;
+    }
+
+    public void setFnDef(FnDef fnDef) {
+        this.fnDef = fnDef;
+    }
+
     @Override
     public String toString() {
         List<String> argStrs = new ArrayList<>();
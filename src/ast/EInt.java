@@ -3,15 +3,22 @@ package ast;
 public class EInt extends Expr {
 
     private int value;
+    // The literal's runtime value, built once so evaluating it doesn't allocate
+    private VInt literal;
 
     public EInt(int value) {
         this.value = value;
+        this.literal = VInt.of(value);
     }
 
     public int getValue() {
         return value;
     }
 
+    public VInt asValue() {
+        return literal;
+    }
+
     @Override
     public String toString() {
         return String.valueOf(value);
@@ -3,11 +3,15 @@ package ast;
 public class ELet extends Expr {
 
     private String binder;
+    private int binderSymbol;
     private Expr subject;
     private Expr continuation;
+    // Frame slot assigned by the resolver, or -1 if not yet resolved
+    private int slot = -1;
 
     public ELet(String binder, Expr subject, Expr continuation) {
         this.binder = binder;
+        this.binderSymbol = Symbols.intern(binder);
         this.subject = subject;
         this.continuation = continuation;
     }
@@ -16,6 +20,10 @@ public class ELet extends Expr {
         return binder;
     }
 
+    public int getBinderSymbol() {
+        return binderSymbol;
+    }
+
     public Expr getSubject() {
         return subject;
     }
@@ -24,6 +32,14 @@ public class ELet extends Expr {
         return continuation;
     }
 
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     @Override
     public String toString() {
         return String.format("let %s = %s in %s", binder, subject, continuation);
@@ -3,11 +3,15 @@ package ast;
 public class EString extends Expr {
 
     private String value;
+    // The literal's runtime value, built once so evaluating it doesn't allocate
+    private VString literal;
 
     public EString(String value) {
         this.value = value;
+        this.literal = new VString(value);
     }
     public String getValue() { return value; }
+    public VString asValue() { return literal; }
 
     public String toString() {
         return String.format("\"%s\"", value);
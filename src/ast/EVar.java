@@ -3,15 +3,31 @@ package ast;
 public class EVar extends Expr {
 
     private String var;
+    private int symbol;
+    // Frame slot assigned by the resolver, or -1 if not yet resolved
+    private int slot = -1;
 
     public EVar(String var) {
         this.var = var;
+        this.symbol = Symbols.intern(var);
     }
     
     public String getVar() {
         return var;
     }
 
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
     @Override
     public String toString() {
         return var;
@@ -2,4 +2,15 @@ package ast;
 
 public abstract class Expr {
 
+    // Static type recorded by the typechecker, or null if it hasn't run
+    private Type staticType;
+
+    public Type getStaticType() {
+        return staticType;
+    }
+
+    public void setStaticType(Type staticType) {
+        this.staticType = staticType;
+    }
+
 }
@@ -6,11 +6,16 @@ import java.util.List;
 public class FnDef {
 
     private String fnName;
+    private int fnSymbol;
     private List<AnnotatedParam> params;
     private Type returnType;
     private Expr body;
+    // Number of frame slots (parameters and let binders) the body needs,
+    // or -1 if not yet resolved
+    private int frameSize = -1;
     public FnDef(String fnName, List<AnnotatedParam> params, Type returnType, Expr body) {
         this.fnName = fnName;
+        this.fnSymbol = Symbols.intern(fnName);
         this.params = params;
         this.returnType = returnType;
         this.body = body;
@@ -18,6 +23,9 @@ public class FnDef {
     public String getFnName() {
         return fnName;
     }
+    public int getFnSymbol() {
+        return fnSymbol;
+    }
     public List<AnnotatedParam> getParams() {
         return params;
     }
@@ -26,10 +34,22 @@ public class FnDef {
         return body;
     }
 
+    public void setBody(Expr body) {
+        this.body = body;
+    }
+
     public Type getReturnType() {
         return returnType;
     }
 
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
     private String paramToString(AnnotatedParam paramPair) {
         return paramPair.param + ": " + paramPair.type.toString();
     }
@@ -7,6 +7,8 @@ public class Program {
 
     private List<FnDef> functionDefs;
     private Expr mainExpr;
+    // Number of frame slots the main expression needs, or -1 if not yet resolved
+    private int mainFrameSize = -1;
 
     public Program(List<FnDef> functionDefs, Expr mainExpr) {
         this.functionDefs = functionDefs;
@@ -18,6 +20,15 @@ public class Program {
     public Expr getMainExpr() {
         return mainExpr;
     }
+    public void setMainExpr(Expr mainExpr) {
+        this.mainExpr = mainExpr;
+    }
+    public int getMainFrameSize() {
+        return mainFrameSize;
+    }
+    public void setMainFrameSize(int mainFrameSize) {
+        this.mainFrameSize = mainFrameSize;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,51 @@
+package ast;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The symbol table. Every identifier (variable, parameter, let binder or
+ * function name) is interned when the node holding it is built, and the node
+ * keeps the identifier's symbol: a dense int id, starting at 0. Passes and
+ * engines key their environments and function tables on symbols, so a lookup
+ * compares ints instead of hashing and comparing strings.
+ *
+ * The table is shared by every program, so nodes built by either front end,
+ * the .digc cache and the rewriting passes all agree on the symbols. It only
+ * grows. Interning is thread-safe, since ParallelFrontEnd builds nodes on
+ * several threads.
+ */
+public final class Symbols {
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // Indexed by symbol; written under the class lock before the symbol is
+    // published in ids
+    private static volatile String[] names = new String[256];
+    private static int count = 0;
+
+    private Symbols() {
+    }
+
+    public static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (Symbols.class) {
+            id = ids.get(name);
+            if (id == null) {
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                names[count] = name;
+                id = count++;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    public static String name(int symbol) {
+        return names[symbol];
+    }
+}
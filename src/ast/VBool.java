@@ -2,13 +2,21 @@ package ast;
 
 public class VBool extends Value {
 
+    // The only two instances, so booleans never need allocating
+    public static final VBool TRUE = new VBool(true);
+    public static final VBool FALSE = new VBool(false);
+
     private boolean value;
     public boolean getValue() { return value; }
 
-    public VBool(boolean value) {
+    private VBool(boolean value) {
         this.value = value;
     }
 
+    public static VBool of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     public String toString() {
         if (value) {
             return "true";
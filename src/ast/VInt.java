@@ -2,12 +2,30 @@ package ast;
 
 public class VInt extends Value {
 
+    // Shared instances for the small integers that dominate counters and indices
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1023;
+    private static final VInt[] CACHE = new VInt[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new VInt(CACHE_LOW + i);
+        }
+    }
+
     private int value;
 
-    public VInt(int value) {
+    private VInt(int value) {
         this.value = value;
     }
 
+    public static VInt of(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new VInt(value);
+    }
+
     public int getValue() {
         return value;
     }
@@ -1,19 +1,158 @@
 package ast;
 
+/*
+ * A string value. Strings built by concat are ropes: a node refers to its two
+ * halves instead of copying them, so building a long string piece by piece
+ * shares what was built so far. The characters are only gathered, once, when
+ * getValue is called (to print, compare or cast the string); the node then
+ * lets go of its halves, so a long string isn't kept both whole and in pieces.
+ *
+ * concat keeps ropes balanced the way an AVL tree is joined: the depth of the
+ * two halves of a node differs by at most one, so depth grows with the log of
+ * the number of pieces. Short pieces are copied into a single leaf instead.
+ * A node that has let go of its halves is joined as a leaf.
+ *
+ * The parallel interpreter may flatten a string on one thread while another
+ * joins or flattens through it, so the halves are read once into locals, and
+ * a node found without them is read back under its lock.
+ */
 public class VString extends Value {
 
+    public static final VString EMPTY = new VString("");
+
+    // Pieces up to this length are copied rather than linked
+    private static final int MAX_LEAF_COPY = 32;
+
+    // The characters, or null for a rope node that hasn't been flattened yet
     private String value;
+    // The halves of a rope node, until it is flattened
+    private VString left;
+    private VString right;
+    private final int length;
+    private final int depth;
+
     public VString(String value) {
         this.value = value;
+        this.left = null;
+        this.right = null;
+        this.length = value.length();
+        this.depth = 0;
+    }
+
+    private VString(VString left, VString right) {
+        this.value = null;
+        this.left = left;
+        this.right = right;
+        this.length = left.length + right.length;
+        this.depth = Math.max(left.depth, right.depth) + 1;
+    }
+
+    public static VString concat(VString left, VString right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        if (left.isLeaf() && right.isLeaf() && left.length + right.length <= MAX_LEAF_COPY) {
+            return new VString(left.getValue() + right.getValue());
+        }
+        return join(left, right);
+    }
+
+    private boolean isLeaf() {
+        return left == null;
+    }
+
+    // A balanced rope for left followed by right, both balanced
+    private static VString join(VString left, VString right) {
+        VString ll = left.left;
+        VString lr = left.right;
+        if (ll != null && lr != null && left.depth > right.depth + 1) {
+            // Join right into the right spine of left, then restore the balance
+            VString joined = join(lr, right);
+            if (joined.depth <= ll.depth + 1) {
+                return new VString(ll, joined);
+            }
+            if (joined.left.depth > joined.right.depth) {
+                joined = rotateRight(joined);
+            }
+            return rotateLeft(new VString(ll, joined));
+        }
+        VString rl = right.left;
+        VString rr = right.right;
+        if (rl != null && rr != null && right.depth > left.depth + 1) {
+            VString joined = join(left, rl);
+            if (joined.depth <= rr.depth + 1) {
+                return new VString(joined, rr);
+            }
+            if (joined.right.depth > joined.left.depth) {
+                joined = rotateLeft(joined);
+            }
+            return rotateRight(new VString(joined, rr));
+        }
+        return new VString(left, right);
+    }
+
+    // The rotations leave the node as it is if the half they would take
+    // apart has been flattened
+    private static VString rotateLeft(VString node) {
+        VString r = node.right;
+        VString rl = r.left;
+        VString rr = r.right;
+        if (rl == null || rr == null) {
+            return node;
+        }
+        return new VString(new VString(node.left, rl), rr);
+    }
+
+    private static VString rotateRight(VString node) {
+        VString l = node.left;
+        VString ll = l.left;
+        VString lr = l.right;
+        if (ll == null || lr == null) {
+            return node;
+        }
+        return new VString(ll, new VString(lr, node.right));
+    }
+
+    public String getValue() {
+        String v = value;
+        return v != null ? v : flatten();
+    }
+
+    private synchronized String flatten() {
+        if (value == null) {
+            StringBuilder sb = new StringBuilder(length);
+            appendTo(sb);
+            value = sb.toString();
+            left = null;
+            right = null;
+        }
+        return value;
+    }
+
+    private void appendTo(StringBuilder sb) {
+        String v = value;
+        VString l = left;
+        VString r = right;
+        if (v != null) {
+            sb.append(v);
+        } else if (l != null && r != null) {
+            l.appendTo(sb);
+            r.appendTo(sb);
+        } else {
+            // Flattened by another thread since value was read
+            sb.append(flatten());
+        }
     }
-    public String getValue() { return value; }
 
     public String toString() {
-        return String.format("\"%s\"", value);
+        return String.format("\"%s\"", getValue());
     }
 
     public String toStringNoQuotes() {
-        return String.format("%s", value);
+        return String.format("%s", getValue());
     }
 
 
@@ -21,7 +160,7 @@ public class VString extends Value {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((value == null) ? 0 : value.hashCode());
+        result = prime * result + getValue().hashCode();
         return result;
     }
 
@@ -34,13 +173,10 @@ public class VString extends Value {
         if (getClass() != obj.getClass())
             return false;
         VString other = (VString) obj;
-        if (value == null) {
-            if (other.value != null)
-                return false;
-        } else if (!value.equals(other.value))
+        if (length != other.length)
             return false;
-        return true;
+        return getValue().equals(other.getValue());
     }
 
-    
+
 }
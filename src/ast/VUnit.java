@@ -2,7 +2,10 @@ package ast;
 
 public class VUnit extends Value {
 
-    public VUnit() { }
+    // The only instance, so all unit values are equal
+    public static final VUnit UNIT = new VUnit();
+
+    private VUnit() { }
 
     @Override
     public String toString() {